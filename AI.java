@@ -4,94 +4,533 @@ package tetris;
  * AI class. Generates a new move whenever a new tetromino is created/AI button is turned
  * on and can be polled to return each move.
  * 
- * AI works by moving each piece into each of its ~32 positions (4 rotations and ~8 x
- * coordinates). For each piece, it asks the board for the score of the shadow and picks
- * the lowest score (low scores are better).
+ * AI works by moving each piece into every position it can lock in, as found by a
+ * MoveGenerator (about 34 on a flat board, more once there are overhangs to tuck under).
+ * For each piece, it asks the board for the score of the shadow and picks the lowest
+ * score (low scores are better).
+ * 
+ * Candidates are placed on a snapshot of the board by Ghosts rather than throwaway
+ * Tetrominoes, so the live board is never written to while the AI is thinking. Since the
+ * candidates are independent they can also be scored in parallel on a fork/join pool.
+ * Ties always go to the first candidate, so the parallel search picks the same move as
+ * the serial one.
+ * 
+ * With a depth above 1 the AI also looks ahead through the preview: the best beam-width
+ * boards after the current piece are expanded with every move of the next piece, the best
+ * of those with the piece after that, and so on. Each depth is searched in turn until the
+ * time budget runs out, and the move leading to the best total score at the deepest
+ * finished depth is played. With -Dtetris.ai.expectimax set to a node budget the AI
+ * searches with an Expectimax instead, which averages over the pieces the bag has left
+ * once the preview runs out, so the depth is no longer capped by the preview.
+ * 
+ * Scores are remembered in a ScoreCache keyed by the Zobrist hash of the board, the
+ * shadow, the stored piece and the position in the bag, so a position reached again
+ * through a different order of moves is looked up instead of scored again. The parallel
+ * search does not use the cache.
+ * 
+ * When only the current and stored pieces are searched, the serial search doesn't need
+ * every score, only the lowest. With -Dtetris.ai.cutoff=true it places all the candidates
+ * first and scores the lowest lying ones first, passing each evaluator the best score so
+ * far as a bound, so that most of the candidates that follow are given up on partway
+ * through the board. It still picks exactly the move that scoring every candidate in full
+ * would. It is off by default: it examines fewer cells, but SearchBenchmark times it
+ * within noise of scoring every candidate (23.8-28.4us against 23.4-27.6us per decision
+ * across its boards).
+ * 
+ * Boards are scored by an Evaluator: the original algorithm by default, or a weighted sum
+ * of board features when -Dtetris.ai.weights names a file of weights to load. With
+ * -Dtetris.ai.batch=true the serial search instead hands the evaluator every candidate in
+ * one Batch and takes back all their scores at once, bypassing the cache and bound. The
+ * scores are exactly the same (BatchTest checks that), but it is off by default: with the
+ * placements copied in and the columns laid out first, SearchBenchmark times it 1-4us per
+ * decision slower than scoring one candidate at a time (about 27-31us against 20-28us).
+ * 
+ * A new AI is set up from these system properties, each of which also has a setter:
+ *   tetris.ai.threads     threads to score candidates on (default 1)
+ *   tetris.ai.depth       pieces to plan, the current one included (default 1); the beam
+ *                         stops at the end of the preview, expectimax goes on past it
+ *   tetris.ai.width       boards kept between pieces (default 8)
+ *   tetris.ai.budget      milliseconds to spend per move (default 20)
+ *   tetris.ai.cache       score cache size in megabytes, 0 = off (default 8)
+ *   tetris.ai.expectimax  nodes to score per move with expectimax, 0 = beam (default 0)
+ *   tetris.ai.cutoff      branch and bound, true or false (default false)
+ *   tetris.ai.batch       batch scoring, true or false (default false)
+ *   tetris.ai.weights     FeatureEvaluator weights file (default: the classic scoring)
  * 
  * AI is completely original and has a high score of ~6300 lines.
  * 
  * @author dmayans
  */
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class AI {
 	
+	// Candidates are numbered swap*MoveGenerator.STATES + position
+	private static final int STATES = MoveGenerator.STATES;
+	private static final int THRESHOLD = 10; // Candidates scored by one fork/join leaf
+	
 	private Board _board;
-	private LinkedList<Integer> _move;
-
+	private UpcomingPieces _upcoming;
+	private GameState _live; // Last snapshot of the live board
+	private int[] _move; // Commands for the chosen move, polled in order
+	private int _length;
+	private int _next;
+	private boolean _swap; // Whether the chosen move starts with a piece swap
+	private int _position; // MoveGenerator position the chosen move locks at
+	
+	private Ghost _ghost;
+	private MoveGenerator _moves;
+	private ForkJoinPool _pool; // null = serial search
+	private int[] _candidates; // Every move for the current piece, then for the swapped one
+	private int _count;
+	private int[] _scores; // Score of each candidate for the current piece
+	private long[] _order; // Candidates sorted by the row they lock in, for branch and bound
+	private boolean _cutoff; // Whether to use branch and bound when it gives the same move
+	private Batch _batch; // null = score candidates one at a time
+	private Evaluator _evaluator;
+	private ScoreCache _cache; // null = no cache
+	
+	// Lookahead settings and the beam
+	private int _depth;
+	private int _width;
+	private long _budget; // nanoseconds
+	private long _expectimax; // Node budget for expectimax, 0 = beam search
+	private GameState[] _beam;
+	private GameState[] _nextBeam;
+	private int[] _beamScore;
+	private int[] _beamRoot;
+	private int[] _nextRoot;
+	private long[] _children;
+	
+	// Statistics for the last move
+	private int _reached;
+	private long _nodes;
+	private long _nanos;
+	
 	public AI(Board board) {
+		this(board, null);
+	}
+	
+	// AI without a live board, for headless games that only call newMove with snapshots
+	public AI() {
+		this(null, null);
+	}
+	
+	public AI(Board board, UpcomingPieces upcoming) {
 		_board = board;
-		_move = new LinkedList<Integer>();
+		_upcoming = upcoming;
+		_move = new int[32];
+		_ghost = new Ghost();
+		_moves = new MoveGenerator();
+		_candidates = new int[2*STATES];
+		_scores = new int[2*STATES];
+		_order = new long[2*STATES];
+		_cutoff = Boolean.parseBoolean(System.getProperty("tetris.ai.cutoff", "false"));
+		this.setBatch(Boolean.getBoolean("tetris.ai.batch"));
+		this.setThreads(Integer.getInteger("tetris.ai.threads", 1));
+		this.setLookahead(Integer.getInteger("tetris.ai.depth", 1),
+				Integer.getInteger("tetris.ai.width", 8),
+				Integer.getInteger("tetris.ai.budget", 20));
+		this.setExpectimax(Long.getLong("tetris.ai.expectimax", 0));
+		this.setCache(Integer.getInteger("tetris.ai.cache", 8)*1048576L);
+		String weights = System.getProperty("tetris.ai.weights");
+		_evaluator = weights==null ? new ClassicEvaluator() : FeatureEvaluator.load(weights);
+	}
+	
+	// Selects serial (1 thread) or parallel candidate scoring. Can be changed between moves.
+	public void setThreads(int threads) {
+		if(_pool != null) {_pool.shutdown();}
+		_pool = threads>1 ? new ForkJoinPool(threads) : null;
+	}
+	
+	// Turns branch and bound on or off. Either way the AI picks the same moves.
+	public void setCutoff(boolean cutoff) {
+		_cutoff = cutoff;
+	}
+	
+	// Turns batch scoring on or off. A serial search then scores all the candidates in one
+	// call to the evaluator, without the cache or branch and bound, and picks the same move.
+	public void setBatch(boolean batch) {
+		_batch = batch ? new Batch() : null;
+	}
+	
+	// Caps the score cache at the given number of bytes. 0 turns the cache off.
+	public void setCache(long bytes) {
+		_cache = bytes>0 ? new ScoreCache(bytes) : null;
+	}
+	
+	// Changes how boards are scored. Scores cached under the old evaluator are forgotten.
+	public void setEvaluator(Evaluator evaluator) {
+		_evaluator = evaluator;
+		if(_cache != null) {_cache.clear();}
+	}
+	
+	// Depth 1 only looks at the current and stored pieces. Each extra ply places one more
+	// preview piece, up to the last one known, keeping the best width boards between plies,
+	// for at most budget milliseconds per move.
+	public void setLookahead(int depth, int width, int budget) {
+		_depth = Math.max(1, depth);
+		_width = Math.max(1, width);
+		_budget = budget*1000000L;
+		_beam = new GameState[_width];
+		_nextBeam = new GameState[_width];
+		_beamScore = new int[_width];
+		_beamRoot = new int[_width];
+		_nextRoot = new int[_width];
+		_children = new long[Math.max(2*STATES, _width*STATES)];
+	}
+	
+	// Searches ahead with expectimax instead of the beam, scoring at most nodes boards per
+	// move. Expectimax can search deeper than the preview goes. 0 goes back to the beam.
+	public void setExpectimax(long nodes) {
+		_expectimax = Math.max(0, nodes);
+	}
+	
+	// Accessors for the statistics of the last move
+	public int getDepth() {
+		return _reached;
+	}
+	
+	public long getNodes() {
+		return _nodes;
+	}
+	
+	public double getNodesPerSecond() {
+		return _nodes/(Math.max(1, _nanos)/1e9);
+	}
+	
+	public ScoreCache getCache() {
+		return _cache;
 	}
 	
+	public Evaluator getEvaluator() {
+		return _evaluator;
+	}
+	
+	// Accessors for the chosen move: where it lands and whether it swaps first
+	public Placement getPlacement() {
+		return _ghost.getPlacement();
+	}
+	
+	public boolean isSwap() {
+		return _swap;
+	}
+	
+	public int getPosition() {
+		return _position;
+	}
+	
+	// Picks the best move for the live board. Asking again before anything has changed
+	// reuses the last snapshot, so it allocates nothing.
 	public void newMove(Tetromino t, int type) {
-		t.hide(); // Prevent interfererence from the current tetromino
-		int score = Integer.MAX_VALUE;
-		int l = 0;
-		for(int r=0; r<4; r++) { // for each rotation
-			for(int x=0; x<10; x++) { // for each x position
-				Tetromino ghost = new Tetromino(_board, t.getType());
-				l = 0;
-				ghost.move(Constants.DOWN); // move down once to prevent the top of the board
-											// from blocking rotation
-				for(int i=0; i<r; i++) {ghost.move(Constants.NROTATE);}; // NROTATE is 
-						// non-recursive rotation, used to block wall kicks. Functionally identical otherwise
-				while(ghost.move(Constants.LEFT)) {l++;}; // flush left
-				for(int i=0; i<x; i++) {ghost.move(Constants.RIGHT);}
-				if(score>_board.getScore(t)) { // if this ghost is a better move, replace the old move
-					_move.clear();
-					score = _board.getScore(t);
-					_move.addLast(2); // drop twice
-					for(int i=0; i<r; i++) {
-						_move.addLast(4); // rotate r times
-					}
-					for(int i=0; i<l; i++) { // move left l times
-						_move.addLast(0);
-					}
-					for(int i=0; i<x; i++) { // move right x times
-						_move.addLast(1);
-					}
-				}
-				ghost.hide();
+		t.hide(); // Keeps the current tetromino out of the snapshot
+		if(_live==null || !_live.matches(_board, t.getType(), type, _upcoming)) {
+			BoardState state = _board.snapshot();
+			if(_upcoming != null) {
+				_live = new GameState(state, t.getType(), type, _upcoming);
+			} else {
+				_live = new GameState(state, t.getType(), type);
+			}
+		}
+		t.show();
+		this.newMove(_live);
+	}
+	
+	// Picks the best move for a piece of type current with type stored in storage, without
+	// knowing what comes next
+	public void newMove(BoardState state, int current, int type) {
+		this.newMove(new GameState(state, current, type));
+	}
+	
+	// Picks the best move for a piece of type current with type stored in storage, given
+	// the first length upcoming pieces in preview
+	public void newMove(BoardState state, int current, int type, int[] preview, int length) {
+		this.newMove(new GameState(state, current, type, preview, length));
+	}
+	
+	// Picks the best move for the current piece of the given game, looking ahead through
+	// as many of its upcoming pieces as the depth allows. Without lookahead this allocates
+	// nothing: the swap is searched from the piece and bag position it would lead to, and
+	// the swapped state is only made for the lookahead.
+	public void newMove(GameState game) {
+		long start = System.nanoTime();
+		BoardState state = game.getBoard();
+		int current = game.getCurrent();
+		int type = game.getHeldCurrent();
+		if(type==-1) {type = 1;} // Swapping into an empty store without a preview brings in an O, for all the AI knows
+		_count = 0;
+		this.collect(state, current, 0);
+		this.collect(state, type, STATES);
+		int depth = _expectimax>0 ? _depth : Math.min(_depth, game.getPreview()+1); // The current piece and every known one
+		boolean batched = _batch!=null && _pool==null;
+		boolean bounded = !batched && _cutoff && _pool==null && depth<=1; // Only the lowest score is needed
+		long keep = Zobrist.stored(game.getStored()) ^ Zobrist.bag(game.getBag());
+		long swap = Zobrist.stored(current) ^ Zobrist.bag(game.getHeldBag());
+		int c = 0;
+		if(bounded) {
+			c = this.branchAndBound(state, current, type, keep, swap);
+		} else if(batched) {
+			this.scoreBatch(state, current, type);
+		} else if(_pool==null) {
+			score(_evaluator, _ghost, state, current, type, _candidates, 0, _count, _scores, _cache, keep, swap);
+		} else {
+			_pool.invoke(new Search(_evaluator, state, current, type, _candidates, 0, _count, _scores));
+		}
+		_nodes = _count;
+		_reached = 1;
+		if(!bounded) {
+			for(int i=1; i<_count; i++) {
+				if(_scores[i]<_scores[c]) {c = i;}
 			}
 		}
-		// This is the same operation, but on the stored piece
-		for(int r=0; r<4; r++) {
-			if(type==-1) {type = 1;}
-			for(int x=0; x<10; x++) {
-				Tetromino ghost = new Tetromino(_board, type);
-				l = 0;
-				ghost.move(Constants.DOWN);
-				for(int i=0; i<r; i++) {ghost.move(Constants.NROTATE);};
-				while(ghost.move(Constants.LEFT)) {l++;};
-				for(int i=0; i<x; i++) {ghost.move(Constants.RIGHT);}
+		GameState swapped = null;
+		if(depth>1) {
+			swapped = game.hold();
+			if(swapped.getCurrent()==-1) {swapped = swapped.deal(type);}
+		}
+		for(int d=2; d<=depth; d++) {
+			int best = _expectimax>0 ? this.expectimax(game, swapped, d, start) : this.lookahead(game, swapped, d, start);
+			if(best<0) {break;} // Out of time, keep the last finished depth
+			c = best;
+			_reached = d;
+		}
+		_nanos = System.nanoTime()-start;
+		// Searches the winner's piece once more to recover its commands
+		_swap = _candidates[c]>=STATES;
+		int piece = _swap ? type : current;
+		int s = _candidates[c]%STATES;
+		_position = s;
+		_ghost.place(piece, s);
+		_moves.generate(state, piece);
+		this.record(_swap, s);
+	}
+	
+	public Integer poll() {
+		if(_next==_length) {return null;}
+		return _move[_next++]; // Boxed values in this range are cached, so this doesn't allocate
+	}
+	
+	// Adds every lock position of a piece of the given type to the candidates
+	private void collect(BoardState state, int type, int swap) {
+		int count = _moves.generate(state, type);
+		for(int i=0; i<count; i++) {
+			_candidates[_count++] = swap+_moves.get(i);
+		}
+	}
+	
+	// Scores candidates lo to hi-1 into scores. keep and swap are the cache keys for the
+	// stored piece and bag position after keeping or swapping the current piece.
+	private static void score(Evaluator evaluator, Ghost ghost, BoardState state, int current, int type, int[] candidates,
+			int lo, int hi, int[] scores, ScoreCache cache, long keep, long swap) {
+		for(int i=lo; i<hi; i++) {
+			int c = candidates[i];
+			if(c<STATES) {
+				ghost.place(current, c);
+				scores[i] = evaluate(evaluator, ghost, state, cache, keep, Integer.MAX_VALUE);
+			} else {
+				ghost.place(type, c-STATES);
 				// The next couple lines handle the relative values of the active piece and stored piece
 				// (i.e., it's better to have a T in store than an O, even if storing the O would yield a
 				// slightly better score
-				if(score>_board.getScore(t)+Constants.SCORES[type]-Constants.SCORES[t.getType()]) {
-					_move.clear();
-					score = _board.getScore(t)+Constants.SCORES[type]-Constants.SCORES[t.getType()];
-					_move.addLast(-1); // -1 commands a piece swap
-					_move.addLast(2);
-					for(int i=0; i<r; i++) {
-						_move.addLast(4);
-					}
-					for(int i=0; i<l; i++) {
-						_move.addLast(0);
-					}
-					for(int i=0; i<x; i++) {
-						_move.addLast(1);
-					}
+				scores[i] = evaluate(evaluator, ghost, state, cache, swap, Integer.MAX_VALUE)+evaluator.hold(type)-evaluator.hold(current);
+			}
+		}
+	}
+	
+	// Scores every candidate into _scores with one call to the evaluator
+	private void scoreBatch(BoardState state, int current, int type) {
+		_batch.clear();
+		for(int i=0; i<_count; i++) {
+			int c = _candidates[i];
+			_ghost.place(c<STATES ? current : type, c%STATES);
+			_batch.add(_ghost.getPlacement());
+		}
+		_evaluator.score(state, _batch, _scores);
+		int hold = _evaluator.hold(type)-_evaluator.hold(current);
+		for(int i=0; i<_count; i++) {
+			if(_candidates[i]>=STATES) {_scores[i] += hold;}
+		}
+	}
+	
+	// Finds the candidate with the lowest score, ties going to the first, the same as scoring
+	// them all would. Candidates are scored lowest lying first, each bounded by the best
+	// score so far. keep and swap are the cache keys, as for score.
+	private int branchAndBound(BoardState state, int current, int type, long keep, long swap) {
+		for(int i=0; i<_count; i++) {
+			_order[i] = (long) MoveGenerator.y(_candidates[i]%STATES)<<32 | i;
+		}
+		Arrays.sort(_order, 0, _count);
+		int hold = _evaluator.hold(type)-_evaluator.hold(current);
+		int best = -1;
+		int bound = Integer.MAX_VALUE;
+		for(int k=0; k<_count; k++) {
+			int i = (int) _order[k];
+			int c = _candidates[i];
+			int score;
+			if(c<STATES) {
+				_ghost.place(current, c);
+				score = evaluate(_evaluator, _ghost, state, _cache, keep, bound);
+			} else {
+				_ghost.place(type, c-STATES);
+				int b = bound==Integer.MAX_VALUE ? bound : bound-hold;
+				score = evaluate(_evaluator, _ghost, state, _cache, swap, b)+hold;
+			}
+			if(score<bound || score==bound && i<best) {
+				bound = score;
+				best = i;
+			}
+		}
+		return best;
+	}
+	
+	// Scores where the ghost was placed, going through the cache if there is one. Scores
+	// above bound may be cut short (see Evaluator), so only those within it are cached.
+	private static int evaluate(Evaluator evaluator, Ghost ghost, BoardState state, ScoreCache cache, long key, int bound) {
+		if(cache==null) {
+			return evaluator.score(state, ghost.getPlacement(), bound);
+		}
+		key ^= state.getHash() ^ Zobrist.shadow(ghost.getPlacement());
+		int score = cache.get(key);
+		if(score==ScoreCache.MISS) {
+			score = evaluator.score(state, ghost.getPlacement(), bound);
+			if(score<=bound) {cache.put(key, score);}
+		}
+		return score;
+	}
+	
+	// Beam search to the given depth. Returns the first candidate of the best line, or -1 if
+	// the time budget ran out first.
+	private int lookahead(GameState game, GameState swapped, int depth, long start) {
+		// The first ply keeps the best root candidates
+		for(int c=0; c<_count; c++) {
+			_children[c] = ((long) _scores[c]<<32) + c;
+		}
+		Arrays.sort(_children, 0, _count);
+		int size = Math.min(_width, _count);
+		for(int i=0; i<size; i++) {
+			int c = (int) _children[i];
+			GameState root = _candidates[c]<STATES ? game : swapped;
+			_ghost.place(root.getCurrent(), _candidates[c]%STATES);
+			_beam[i] = root.apply(_ghost.getPlacement());
+			_beamScore[i] = (int) (_children[i]>>32);
+			_beamRoot[i] = c;
+		}
+		// Every later ply places the next preview piece on each board in the beam
+		for(int ply=1; ply<depth; ply++) {
+			int count = 0;
+			for(int i=0; i<size; i++) {
+				if(System.nanoTime()-start>_budget) {return -1;}
+				// A line that swapped into an empty store runs out of known pieces a ply early,
+				// and stands in an O for its last piece just as the first ply does
+				if(_beam[i].getCurrent()==-1) {_beam[i] = _beam[i].deal(1);}
+				BoardState board = _beam[i].getBoard();
+				int piece = _beam[i].getCurrent();
+				long key = Zobrist.stored(_beam[i].getStored()) ^ Zobrist.bag(_beam[i].getBag());
+				int moves = _moves.generate(board, piece);
+				for(int j=0; j<moves; j++) {
+					_ghost.place(piece, _moves.get(j));
+					_children[count++] = ((long) (_beamScore[i]+evaluate(_evaluator, _ghost, board, _cache, key, Integer.MAX_VALUE))<<32) + i*STATES+_moves.get(j);
 				}
-				ghost.hide();
 			}
+			_nodes += count;
+			Arrays.sort(_children, 0, count);
+			size = Math.min(_width, count);
+			for(int i=0; i<size; i++) {
+				int parent = (int) _children[i]/STATES;
+				int s = (int) _children[i]%STATES;
+				_ghost.place(_beam[parent].getCurrent(), s);
+				_nextBeam[i] = _beam[parent].apply(_ghost.getPlacement());
+				_nextRoot[i] = _beamRoot[parent];
+				_beamScore[i] = (int) (_children[i]>>32);
+			}
+			GameState[] beam = _beam;
+			_beam = _nextBeam;
+			_nextBeam = beam;
+			int[] root = _beamRoot;
+			_beamRoot = _nextRoot;
+			_nextRoot = root;
 		}
-		t.show();
+		Arrays.fill(_beam, null);
+		Arrays.fill(_nextBeam, null);
+		return _beamRoot[0];
 	}
 	
-	public Integer poll() {
-		return _move.pollFirst();
+	// Expectimax to the given depth, on what is left of the node budget after the candidates
+	// and the shallower depths. Returns the best candidate, or -1 if the search ran out of
+	// nodes or time first.
+	private int expectimax(GameState game, GameState swapped, int depth, long start) {
+		for(int c=0; c<_count; c++) {
+			_children[c] = ((long) _scores[c]<<32) + c;
+		}
+		Arrays.sort(_children, 0, _count);
+		Expectimax search = new Expectimax(_evaluator, _cache, _pool, _width, _expectimax-_nodes, start+_budget);
+		int best = -1;
+		int value = Integer.MAX_VALUE;
+		for(int i=0; i<Math.min(_width, _count); i++) {
+			int c = (int) _children[i];
+			GameState root = _candidates[c]<STATES ? game : swapped;
+			_ghost.place(root.getCurrent(), _candidates[c]%STATES);
+			int v = (int) (_children[i]>>32)+search.search(root.apply(_ghost.getPlacement()), depth-1);
+			if(search.isAborted()) {return -1;}
+			if(v<value) {
+				value = v;
+				best = c;
+			}
+		}
+		_nodes += search.getNodes();
+		return best;
+	}
+	
+	// Writes the commands for lock position s, as found by the last search, into the move
+	// buffer
+	private void record(boolean swap, int s) {
+		_length = 0;
+		_next = 0;
+		int length = _moves.length(s)+1;
+		if(_move.length<length) {_move = new int[2*length];}
+		if(swap) {_move[_length++] = -1;} // -1 commands a piece swap
+		_moves.path(s, _move, _length);
+		_length += _moves.length(s);
+	}
+	
+	// Fork/join task that splits the candidate range until it is small enough to score
+	// with a ghost of its own
+	@SuppressWarnings("serial")
+	private static class Search extends RecursiveAction {
+		private Evaluator _evaluator;
+		private BoardState _state;
+		private int _current;
+		private int _type;
+		private int[] _candidates;
+		private int _lo;
+		private int _hi;
+		private int[] _scores;
+		
+		public Search(Evaluator evaluator, BoardState state, int current, int type, int[] candidates, int lo, int hi,
+				int[] scores) {
+			_evaluator = evaluator;
+			_state = state;
+			_current = current;
+			_type = type;
+			_candidates = candidates;
+			_lo = lo;
+			_hi = hi;
+			_scores = scores;
+		}
+		
+		@Override
+		protected void compute() {
+			if(_hi-_lo<=THRESHOLD) {
+				score(_evaluator, new Ghost(), _state, _current, _type, _candidates, _lo, _hi, _scores, null, 0, 0);
+			} else {
+				int mid = (_lo+_hi)>>>1;
+				invokeAll(new Search(_evaluator, _state, _current, _type, _candidates, _lo, mid, _scores),
+						new Search(_evaluator, _state, _current, _type, _candidates, mid, _hi, _scores));
+			}
+		}
 	}
 	
 }
@@ -0,0 +1,263 @@
+package tetris;
+
+/**
+ * Benchmark for the AI's candidate search. Plays a seeded game to collect mid-game boards,
+ * then times AI.newMove on them with 1, 2, 4... threads up to the number of cores and
+ * prints decisions per second. Every parallel decision is also checked against the serial
+ * one. Lookahead is then timed at each depth the preview allows, printing the depth the
+ * search actually reached within its budget, how many nodes per second it scored and how
+ * the score cache did. Each evaluator then scores every candidate one at a time, with
+ * branch and bound and in a single batch, checking all three pick the same moves and
+ * printing how many cells of the board each looked at per decision (SearchBenchmark times
+ * them under JMH). Expectimax is then timed one and two pieces past the preview on 1 and
+ * max threads, checking the parallel moves against the serial ones.
+ * 
+ * Usage: java tetris.AIBenchmark [seconds per thread count] [max threads]
+ *   Expectimax searches with the width and node budget of tetris.ai.width (default 2)
+ *   and tetris.ai.expectimax (default 100000).
+ * 
+ * @author dmayans
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+public class AIBenchmark {
+	
+	public static void main(String[] args) {
+		double seconds = args.length>0 ? Double.parseDouble(args[0]) : 2;
+		ArrayList<BoardState> boards = new ArrayList<BoardState>();
+		ArrayList<int[]> pieces = new ArrayList<int[]>();
+		collect(boards, pieces, 200, new Random(1));
+		
+		// Serial moves are the reference every thread count is checked against
+		AI serial = new AI(new Board());
+		serial.setThreads(1);
+		int[][] expected = new int[boards.size()][];
+		for(int i=0; i<boards.size(); i++) {
+			serial.newMove(boards.get(i), pieces.get(i)[0], pieces.get(i)[1]);
+			expected[i] = drain(serial);
+		}
+		
+		int max = args.length>1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		System.out.println("threads  decisions/s  mismatches");
+		for(int threads=1; threads<=max; threads = threads==max ? max+1 : Math.min(threads*2, max)) {
+			AI ai = new AI(new Board());
+			ai.setThreads(threads);
+			int mismatches = 0;
+			for(int i=0; i<boards.size(); i++) { // Also serves as warmup
+				ai.newMove(boards.get(i), pieces.get(i)[0], pieces.get(i)[1]);
+				if(!Arrays.equals(expected[i], drain(ai))) {mismatches++;}
+			}
+			long decisions = 0;
+			long start = System.nanoTime();
+			long end = start + (long) (seconds*1e9);
+			while(System.nanoTime()<end) {
+				for(int i=0; i<boards.size(); i++) {
+					ai.newMove(boards.get(i), pieces.get(i)[0], pieces.get(i)[1]);
+				}
+				decisions += boards.size();
+			}
+			double rate = decisions/((System.nanoTime()-start)/1e9);
+			System.out.printf("%7d  %11.0f  %10d%n", threads, rate, mismatches);
+			ai.setThreads(1);
+		}
+		
+		System.out.println();
+		System.out.println("depth  decisions/s  reached     nodes/s  hit rate  evictions");
+		for(int depth=1; depth<=UpcomingPieces.PREVIEW+1; depth++) {
+			AI ai = new AI(new Board());
+			ai.setLookahead(depth, Integer.getInteger("tetris.ai.width", 8), Integer.getInteger("tetris.ai.budget", 20));
+			for(int i=0; i<boards.size(); i++) { // Warmup
+				move(ai, boards.get(i), pieces.get(i));
+			}
+			long decisions = 0;
+			long reached = 0;
+			long nodes = 0;
+			long start = System.nanoTime();
+			long end = start + (long) (seconds*1e9);
+			while(System.nanoTime()<end) {
+				for(int i=0; i<boards.size(); i++) {
+					move(ai, boards.get(i), pieces.get(i));
+					reached += ai.getDepth();
+					nodes += ai.getNodes();
+				}
+				decisions += boards.size();
+			}
+			double elapsed = (System.nanoTime()-start)/1e9;
+			ScoreCache cache = ai.getCache();
+			double hits = cache==null ? 0 : (double) cache.getHits()/Math.max(1, cache.getHits()+cache.getMisses());
+			System.out.printf("%5d  %11.0f  %7.2f  %10.0f  %8.3f  %9d%n", depth, decisions/elapsed,
+					(double) reached/decisions, nodes/elapsed, hits, cache==null ? 0 : cache.getEvictions());
+		}
+		
+		System.out.println();
+		System.out.println("evaluator  scoring  cells/decision  mismatches");
+		Evaluator[] evaluators = {new ClassicEvaluator(), new FeatureEvaluator()};
+		String[] names = {"classic", "features"};
+		String[] modes = {"single", "cutoff", "batch"};
+		for(int e=0; e<evaluators.length; e++) {
+			int[][] reference = null;
+			for(int mode=0; mode<modes.length; mode++) {
+				// Without the cache, so every candidate is scored
+				AI ai = new AI(new Board());
+				ai.setThreads(1);
+				ai.setLookahead(1, 1, 0);
+				ai.setCache(0);
+				ai.setCutoff(mode==1);
+				ai.setBatch(mode==2);
+				Counting counting = new Counting(evaluators[e]);
+				ai.setEvaluator(counting);
+				int[][] moves = new int[boards.size()][];
+				for(int i=0; i<boards.size(); i++) {
+					ai.newMove(boards.get(i), pieces.get(i)[0], pieces.get(i)[1]);
+					moves[i] = drain(ai);
+				}
+				if(reference==null) {reference = moves;}
+				int mismatches = 0;
+				for(int i=0; i<boards.size(); i++) {
+					if(!Arrays.equals(reference[i], moves[i])) {mismatches++;}
+				}
+				double cells = (double) counting._cells/boards.size();
+				System.out.printf("%-9s  %7s  %14.0f  %10d%n", names[e], modes[mode], cells, mismatches);
+			}
+		}
+		
+		System.out.println();
+		System.out.println("depth  threads  decisions/s  reached     nodes/s  mismatches");
+		long budget = Long.getLong("tetris.ai.expectimax", 100000);
+		for(int depth=UpcomingPieces.PREVIEW+2; depth<=UpcomingPieces.PREVIEW+3; depth++) {
+			int[][] reference = null;
+			for(int threads=1; threads<=max; threads = threads==max ? max+1 : max) {
+				// Only the node budget may cut a search short, so every run searches alike
+				AI ai = new AI(new Board());
+				ai.setThreads(threads);
+				ai.setLookahead(depth, Integer.getInteger("tetris.ai.width", 2), 60000);
+				ai.setExpectimax(budget);
+				int[][] moves = new int[boards.size()][];
+				for(int i=0; i<boards.size(); i++) { // Also serves as warmup
+					move(ai, boards.get(i), pieces.get(i));
+					moves[i] = drain(ai);
+				}
+				if(reference==null) {reference = moves;}
+				int mismatches = 0;
+				for(int i=0; i<boards.size(); i++) {
+					if(!Arrays.equals(reference[i], moves[i])) {mismatches++;}
+				}
+				long decisions = 0;
+				long reached = 0;
+				long nodes = 0;
+				long start = System.nanoTime();
+				long end = start + (long) (seconds*1e9);
+				while(System.nanoTime()<end) {
+					for(int i=0; i<boards.size(); i++) {
+						move(ai, boards.get(i), pieces.get(i));
+						reached += ai.getDepth();
+						nodes += ai.getNodes();
+					}
+					decisions += boards.size();
+				}
+				double elapsed = (System.nanoTime()-start)/1e9;
+				System.out.printf("%5d  %7d  %11.0f  %7.2f  %10.0f  %10d%n", depth, threads, decisions/elapsed,
+						(double) reached/decisions, nodes/elapsed, mismatches);
+				ai.setThreads(1);
+			}
+		}
+	}
+	
+	private static void move(AI ai, BoardState board, int[] pieces) {
+		ai.newMove(board, pieces[0], pieces[1], Arrays.copyOfRange(pieces, 2, pieces.length), pieces.length-2);
+	}
+	
+	// Plays a game with the serial AI and records the board and pieces (current, stored, then
+	// the preview) before each move
+	private static void collect(ArrayList<BoardState> boards, ArrayList<int[]> pieces, int count, Random random) {
+		int[] sequence = new int[count*2+UpcomingPieces.PREVIEW+1];
+		for(int i=0; i<sequence.length; i++) {
+			sequence[i] = random.nextInt(7);
+		}
+		int next = 0;
+		Board board = new Board();
+		AI ai = new AI(board);
+		int stored = -1;
+		Tetromino t = new Tetromino(board, sequence[next]);
+		while(boards.size()<count) {
+			t.hide();
+			boards.add(board.snapshot());
+			t.show();
+			int[] known = new int[UpcomingPieces.PREVIEW+2];
+			known[0] = t.getType();
+			known[1] = stored;
+			System.arraycopy(sequence, next+1, known, 2, UpcomingPieces.PREVIEW);
+			pieces.add(known);
+			ai.newMove(t, stored);
+			Integer x;
+			while((x = ai.poll()) != null) {
+				if(x==-1) {
+					t.hide();
+					int type = t.getType();
+					t = new Tetromino(board, stored==-1 ? sequence[++next] : stored);
+					stored = type;
+				} else {
+					t.move(Constants.MOTION[x]);
+				}
+			}
+			while(t.move(Constants.DOWN)) {}
+			t.lock();
+			board.clearRow(t.min());
+			if(board.isOver()) {
+				board.clear();
+			}
+			t = new Tetromino(board, sequence[++next]);
+		}
+	}
+	
+	// Passes scoring on to another evaluator, adding up the cells it looks at
+	private static class Counting implements Evaluator {
+		private Evaluator _evaluator;
+		private long _cells;
+		
+		public Counting(Evaluator evaluator) {
+			_evaluator = evaluator;
+		}
+		
+		@Override
+		public int score(BoardState state, Placement p) {
+			return this.score(state, p, Integer.MAX_VALUE);
+		}
+		
+		@Override
+		public int score(BoardState state, Placement p, int bound) {
+			if(_evaluator instanceof FeatureEvaluator) {
+				_cells += ((FeatureEvaluator) _evaluator).cells(state, p, bound);
+			} else {
+				_cells += state.cells(p, bound);
+			}
+			return _evaluator.score(state, p, bound);
+		}
+		
+		@Override
+		public void score(BoardState state, Batch batch, int[] scores) {
+			for(int i=0; i<batch.size(); i++) {
+				scores[i] = this.score(state, batch.get(i), Integer.MAX_VALUE);
+			}
+		}
+		
+		@Override
+		public int hold(int type) {
+			return _evaluator.hold(type);
+		}
+	}
+	
+	private static int[] drain(AI ai) {
+		int[] move = new int[32];
+		int length = 0;
+		Integer x;
+		while((x = ai.poll()) != null) {
+			if(length==move.length) {move = Arrays.copyOf(move, 2*length);} // Tuck paths can run past 32
+			move[length++] = x;
+		}
+		return Arrays.copyOf(move, length);
+	}
+}
@@ -6,13 +6,12 @@ import javax.swing.JFrame;
  * @author dmayans
  * 
  * @TODO
- * 1) Fix wall kicks, currently do not function
- * 2) Currently AI button does not properly disable player controls
+ * 1) Currently AI button does not properly disable player controls
  * 
  */
 
 public class App {
-
+	
 	public static void main(String[] args) {
 		JFrame frame = new JFrame();
 		frame.add(new TetrisShell());
@@ -22,5 +21,5 @@ public class App {
 		frame.setResizable(false);
 		frame.setVisible(true);
 	}
-
+	
 }
@@ -1,197 +1,184 @@
 package tetris;
 
 /**
- * Board class handles the game board, accessors and mutators for the data within, a
- * scoring algorithm for the AI, and logic for clearing lines.
+ * Board class handles the game board, accessors and mutators for the data within,
+ * snapshots for the AI's scoring algorithm, and logic for clearing lines.
+ * 
+ * The board is stored as one bitmask per row (bit x set = column x occupied), with
+ * a separate color plane that is only read when painting. Shadows only exist in the
+ * color plane, so none of the game logic touches a Color. The board also keeps the height
+ * of every column of locked blocks, updated when a piece locks and when rows clear, so
+ * shadows can find where they land without walking down the board.
  * 
  * @author dmayans
  */
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.util.ArrayList;
 
 public class Board {
 	
-	private ArrayList<RectangleShape[]> _board;
+	public static final int WIDTH = 10;
+	public static final int HEIGHT = 22; // 20 visible rows plus two spawn rows
+	public static final int VISIBLE = 20;
+	public static final int FULL = (1<<WIDTH)-1; // Mask of a completely filled row
+	
+	private int[] _rows; // Occupied cells, one mask per row
+	private Color[][] _colors; // Color plane, rendering only
+	private int[] _heights; // Lowest row above the highest locked block in each column
 	
 	public Board() {
-		_board = new ArrayList<RectangleShape[]>();
-		for(int i=0; i<22; i++) {
-			_board.add(new RectangleShape[10]);
-			for(int j=0; j<10; j++) {
-				_board.get(i)[j] = new RectangleShape();
-				this.setRectangle(_board.get(i)[j]);
+		_rows = new int[HEIGHT];
+		_colors = new Color[HEIGHT][WIDTH];
+		for(int i=0; i<HEIGHT; i++) {
+			for(int j=0; j<WIDTH; j++) {
+				_colors[i][j] = Color.BLACK;
 			}
 		}
-		this.setLocations(0);
+		_heights = new int[WIDTH];
 	}
 	
 	// Accessors
 	public boolean isOccupied(int x, int y) {
 		if(x<0 || x>9 || y<0 || y>21) {return true;}
-		return _board.get(y)[x].on();
+		return (_rows[y] & (1<<x)) != 0;
+	}
+	
+	public int getRow(int y) {
+		return _rows[y];
+	}
+	
+	public Color getColor(int x, int y) {
+		return _colors[y][x];
 	}
 	
-	private boolean isShadow(int x, int y) {
-		return _board.get(y)[x].isShadow();
+	public int getHeight(int x) {
+		return _heights[x];
+	}
+	
+	// Number of rows the given cells can fall before they land. Looked up from the column
+	// heights unless a cell is tucked beneath the top of its column.
+	public int drop(int[] x, int[] y) {
+		int drop = HEIGHT;
+		for(int i=0; i<4; i++) {
+			if(y[i]<_heights[x[i]]) {return this.walk(x, y);}
+			drop = Math.min(drop, y[i]-_heights[x[i]]);
+		}
+		return drop;
+	}
+	
+	// Slow path of drop: moves the cells down one row at a time
+	private int walk(int[] x, int[] y) {
+		int drop = 0;
+		boolean flag = true;
+		while(flag) {
+			drop++;
+			for(int i=0; i<4; i++) {
+				flag = flag && !this.isOccupied(x[i], y[i]-drop);
+			}
+		}
+		return drop-1;
 	}
 	
-	public boolean leftKick(int x, int y, double[] center) {
-		return !this.isOccupied((int) (center[0]-center[1]+y), (int) (center[1]+center[0]-x)) &&
-				!this.isOccupied((int) (center[0]-center[1]+y+1), (int) (center[1]+center[0]-x));
+	// Copies the current cells into an immutable snapshot for scoring. The caller hides
+	// the active tetromino first so it isn't part of the snapshot.
+	public BoardState snapshot() {
+		return new BoardState(_rows);
 	}
 	
-	public boolean rightKick (int x, int y, double[] center) {
-		return !this.isOccupied((int) (center[0]-center[1]+y), (int) (center[1]+center[0]-x)) &&
-				!this.isOccupied((int) (center[0]-center[1]+y-1), (int) (center[1]+center[0]-x));
+	// Whether a tetromino of the given type and orientation fits at offset (x, y)
+	public boolean fits(int type, int rotation, int x, int y) {
+		return PieceTable.fits(_rows, type, rotation, x, y);
 	}
 	
 	// Mutators
 	public void paintBlock(int x, int y, Color c) {
 		// Paints a single light the given color
-		_board.get(y)[x].flickOn(c);
+		_rows[y] |= 1<<x;
+		_colors[y][x] = c;
 	}
 	
-	public void darkenBlock(int x, int y) {
-		// Paints a single light black
-		_board.get(y)[x].flickOff();
-	}
-	
-	// Scoring algorithm- low score is better
-	public int getScore(Tetromino t) {
-		int score = -9 * this.simulateClear(t.min()); // -9 points for each line cleared
-		for(int x=0; x<10; x++) {
-			int numBlocks = 0;
-			int blockScore = 0;
-			for (int y=0; y<20; y++) {
-				if(this.isShadow(x, y) && !_board.get(y)[x].simulated()) {numBlocks++;}
-				// +1 point for each shadow above the ground
-			}
-			int y = 0;
-			while(numBlocks>0) {
-				if(this.isShadow(x, y) && !_board.get(y)[x].simulated()) {
-					numBlocks--;
-					if(y>15) {blockScore+=15;} // +15 points for height above 15 rows
-					score += blockScore; // (i.e., as the stacks get higher, the ai will
-					blockScore++; // will quickly favor lower positions
-				} else if(this.isOccupied(x, y) && !_board.get(y)[x].simulated()) {
-					blockScore++;
-				} else if(!_board.get(y)[x].simulated()) {
-					score += 17; // 17 points for each gap beneath the shadow
-				}
-				y++;
-			}
-			int towers = 0;
-			for(int j=0; j<16; j++) {
-				if(!_board.get(y)[x].simulated()) {
-					if(this.isOccupied(x, j)) {
-						towers = 0;
-					} else if(this.isOccupied(x-1, j) &&
-							this.isOccupied(x+1, j)) {
-						towers++;
-						if(towers==3) { // 14 points for generating a tower
-							score += 14; // (tower = only an I can fit cleanly inside)
-						}
-					}
-				}
-			}
-		}
-		this.unSimulate(t.min());
-		return score;
+	public void paintShadow(int x, int y) {
+		// Paints a single light as part of a shadow. Shadows are not solid.
+		_colors[y][x] = Color.GRAY;
 	}
 	
-	// Method used internally to set initial square conditions
-	private void setRectangle(RectangleShape rectangle) {
-		rectangle.setSize(30,30);
-		rectangle.setBorderColor(Constants.GRAY);
-		rectangle.setVisible(false);
+	// Called when the block at (x, y) locks into place
+	public void lock(int x, int y) {
+		_heights[x] = Math.max(_heights[x], y+1);
 	}
 	
-	// Graphically updates the locations of each of the squares when a row is cleared
-	private void setLocations(int min) {
-		for(int i=min; i<20; i++) {
-			for(int j=0; j<10; j++) {
-				_board.get(i)[j].setVisible(true);
-				_board.get(i)[j].setLocation(30*j,570-30*i);
-			}
-		}
+	public void darkenBlock(int x, int y) {
+		// Paints a single light black
+		_rows[y] &= ~(1<<x);
+		_colors[y][x] = Color.BLACK;
 	}
 	
-	// Logic for clearing rows
+	// Logic for clearing rows. Full rows are compacted out of the masks and the color
+	// plane's row arrays are rotated to the top, so nothing is allocated.
 	public int clearRow(int min) {
 		int cleared = 0;
 		for(int i=min; i<Math.min(20, min+4); i++) {
-			boolean flag = true;
-			for(int j=0; j<10; j++) {
-				flag = flag && this.isOccupied(j,i);
-			}
-			if(flag) {
+			if(_rows[i]==FULL) {
 				cleared++;
-				_board.remove(i);
-				i--;
-				_board.add(new RectangleShape[10]);
-				for(int j=0; j<10; j++) {
-					_board.get(21)[j] = new RectangleShape();
-					this.setRectangle(_board.get(21)[j]);
+				Color[] row = _colors[i];
+				System.arraycopy(_rows, i+1, _rows, i, HEIGHT-1-i);
+				System.arraycopy(_colors, i+1, _colors, i, HEIGHT-1-i);
+				_rows[HEIGHT-1] = 0;
+				for(int j=0; j<WIDTH; j++) {
+					row[j] = Color.BLACK;
 				}
-			}
-		}
-		this.setLocations(min);
-		return cleared;
-	}
-	
-	// Simulates line clears (so cleared lines do not interfere with scoring algorithm
-	private int simulateClear(int min) {
-		int lines = 0;
-		for(int i=min; i<Math.min(20, min+4); i++) {
-			boolean flag = true;
-			for(int j=0; j<10; j++) {
-				flag = flag && this.isOccupied(j,i);
-			}
-			if(flag) {
-				lines++;
-				for(int j=0; j<10; j++) {
-					_board.get(i)[j].simulate(true);
+				_colors[HEIGHT-1] = row;
+				// Columns that reached above the cleared row come down with it
+				for(int j=0; j<WIDTH; j++) {
+					if(_heights[j]>i) {
+						_heights[j]--;
+						while(_heights[j]>0 && (_rows[_heights[j]-1] & (1<<j))==0) {_heights[j]--;}
+					}
 				}
+				i--;
 			}
 		}
-		return lines;
-	}
-	
-	// Removes all simulated line clears
-	private void unSimulate(int min) {
-		for(int i=min; i<Math.min(20, min+4); i++) {
-			for(RectangleShape light : _board.get(i)) {
-				light.simulate(false);
-			}
-		}
+		return cleared;
 	}
 	
 	// Paint method called by the tetris object
 	public void paint(Graphics g) {
+		paint(g, _colors);
+	}
+	
+	// Paints the visible rows of a color plane
+	public static void paint(Graphics g, Color[][] colors) {
 		for(int i=0; i<20; i++) {
 			for(int j=0; j<10; j++) {
-				_board.get(i)[j].paint(g);
+				paintCell(g, j, i, colors[i][j]);
 			}
 		}
 	}
 	
+	// Paints the cell at (x, y) with its grid lines
+	public static void paintCell(Graphics g, int x, int y, Color c) {
+		g.setColor(c);
+		g.fillRect(30*x, 570-30*y, 30, 30);
+		g.setColor(Constants.GRAY);
+		g.drawRect(30*x, 570-30*y, 30, 30);
+	}
+	
 	// Checks to see if any block is in the lowest invisible row
 	public boolean isOver() {
-		boolean flag = false;
-		for(int i=0; i<10; i++) {
-			flag = flag || this.isOccupied(i, 20);
-		}
-		return flag;
+		return _rows[20] != 0;
 	}
 	
 	// Clears the board for game over / restart
 	public void clear() {
-		for(RectangleShape[] row : _board) {
-			for(RectangleShape block : row) {
-				block.flickOff();
+		for(int i=0; i<HEIGHT; i++) {
+			_rows[i] = 0;
+			for(int j=0; j<WIDTH; j++) {
+				_colors[i][j] = Color.BLACK;
 			}
 		}
+		for(int j=0; j<WIDTH; j++) {
+			_heights[j] = 0;
+		}
 	}
 }
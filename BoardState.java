@@ -0,0 +1,420 @@
+package tetris;
+
+/**
+ * Immutable snapshot of the locked cells of a board, one bitmask per row. Holds the
+ * scoring algorithm for the AI. Scoring never writes to the snapshot (the candidate's
+ * shadow and any simu-cleared rows only exist as local masks), so a single snapshot can
+ * be scored from any number of threads at once. Each snapshot also carries the Zobrist
+ * hash of its cells, the cells of each column as a mask (one bit per row) and the height
+ * of each column, which apply() updates incrementally.
+ * 
+ * The snapshot also keeps the board features the FeatureEvaluator weighs: total height,
+ * holes, bumpiness, wells and row and column transitions. When a piece locks without
+ * clearing a row, only the columns and rows it touches can change, so apply() updates the
+ * features from those alone. The same updates give the features a candidate would leave
+ * behind (getHoles(p) and so on) without building the board. Clearing rows shifts
+ * everything above them down, so then each column mask has the full rows squeezed out of
+ * it and the column features are counted again from the ten masks, a few bit operations
+ * per column. Rows keep their transitions when they move and full rows have none, so the
+ * row transitions are the same as if p cleared nothing, and only the rows above the
+ * lowest cleared one are hashed again.
+ * 
+ * Scoring works a column at a time on the column masks, with the candidate's cells and
+ * the simu-cleared rows as masks too, so it counts whole columns with bitCount instead of
+ * visiting cells. Every column only ever adds to the score once the cleared lines are
+ * counted, so scoring with a bound stops after the first column that takes the score past
+ * it.
+ * 
+ * @author dmayans
+ */
+
+import java.util.Arrays;
+
+public class BoardState {
+	
+	private static final int VISIBLE = (1<<Board.VISIBLE)-1; // Column mask of the visible rows
+	private static final int LOWER = (1<<16)-1; // Rows towers are looked for in
+	private static final int[] TRANSITIONS = new int[1<<Board.WIDTH]; // By row mask
+	
+	static {
+		for(int row=0; row<TRANSITIONS.length; row++) {
+			int walled = row<<1 | 1 | 1<<(Board.WIDTH+1);
+			TRANSITIONS[row] = Integer.bitCount((walled ^ walled>>1) & ((1<<(Board.WIDTH+1))-1));
+		}
+	}
+	
+	private final int[] _rows;
+	private final long _hash;
+	private final int[] _columns; // Occupied cells, one mask per column
+	private final int[] _heights; // Lowest row above the highest block in each column
+	private final int _top; // Height of the highest column
+	
+	// Features
+	private final int _totalHeight; // Sum of the column heights
+	private final int _holes; // Empty cells beneath the top of their column
+	private final int _bumpiness; // Height differences between neighboring columns
+	private final int _wells; // How far each column is below both its neighbors
+	private final int _rowTransitions; // In the rows up to the top, the walls counting as filled
+	private final int _columnTransitions; // The floor counting as filled
+	
+	public BoardState(int[] rows) {
+		this(Arrays.copyOf(rows, Board.HEIGHT), columns(rows));
+	}
+	
+	// Takes ownership of rows and columns and counts everything else from them
+	private BoardState(int[] rows, int[] columns) {
+		this(rows, Zobrist.cells(rows), columns, -1);
+	}
+	
+	// Takes ownership of rows and columns, whose hash is already known, and counts the
+	// column features from the columns. The row transitions are counted from the rows too
+	// unless they are given (-1 = count them).
+	private BoardState(int[] rows, long hash, int[] columns, int rowTransitions) {
+		_rows = rows;
+		_hash = hash;
+		_columns = columns;
+		_heights = heights(columns);
+		int top = 0;
+		int totalHeight = 0;
+		int holes = 0;
+		int bumpiness = 0;
+		int wells = 0;
+		int columnTransitions = 0;
+		for(int x=0; x<Board.WIDTH; x++) {
+			top = Math.max(top, _heights[x]);
+			totalHeight += _heights[x];
+			holes += holes(columns[x]);
+			int left = x==0 ? Board.HEIGHT : _heights[x-1];
+			int right = x==Board.WIDTH-1 ? Board.HEIGHT : _heights[x+1];
+			if(x>0) {bumpiness += Math.abs(_heights[x]-left);}
+			wells += Math.max(0, Math.min(left, right)-_heights[x]); // The walls count as full height
+			columnTransitions += columnTransitions(columns[x]);
+		}
+		if(rowTransitions==-1) {
+			rowTransitions = 0;
+			for(int y=0; y<top; y++) {
+				rowTransitions += rowTransitions(rows[y]);
+			}
+		}
+		_top = top;
+		_totalHeight = totalHeight;
+		_holes = holes;
+		_bumpiness = bumpiness;
+		_wells = wells;
+		_rowTransitions = rowTransitions;
+		_columnTransitions = columnTransitions;
+	}
+	
+	// Takes ownership of rows, columns and heights, whose values are already known. The
+	// features are those of previous once p locks without clearing a row.
+	private BoardState(int[] rows, long hash, int[] columns, int[] heights, BoardState previous, Placement p) {
+		_rows = rows;
+		_hash = hash;
+		_columns = columns;
+		_heights = heights;
+		_top = Math.max(previous._top, p.min()+p.getRows());
+		_totalHeight = previous.getTotalHeight(p);
+		_holes = previous.getHoles(p);
+		_bumpiness = previous.getBumpiness(p);
+		_wells = previous.getWells(p);
+		_rowTransitions = previous.getRowTransitions(p);
+		_columnTransitions = previous.getColumnTransitions(p);
+	}
+	
+	private static int[] columns(int[] rows) {
+		int[] columns = new int[Board.WIDTH];
+		for(int y=0; y<Board.HEIGHT; y++) {
+			for(int row=rows[y]; row!=0; row &= row-1) {
+				columns[Integer.numberOfTrailingZeros(row)] |= 1<<y;
+			}
+		}
+		return columns;
+	}
+	
+	private static int[] heights(int[] columns) {
+		int[] heights = new int[Board.WIDTH];
+		for(int x=0; x<Board.WIDTH; x++) {
+			heights[x] = 32-Integer.numberOfLeadingZeros(columns[x]);
+		}
+		return heights;
+	}
+	
+	// Returns the board after the placement locks and its full rows are cleared, the same
+	// way Board.clearRow would clear them. This snapshot is left as it was.
+	public BoardState apply(Placement p) {
+		int[] rows = new int[Board.HEIGHT];
+		int height = 0;
+		int cleared = 0; // Mask of the full rows
+		for(int y=0; y<Board.HEIGHT; y++) {
+			int row = _rows[y] | p.getMask(y);
+			if(row!=Board.FULL || y<p.min() || y>=Math.min(20, p.min()+4)) {
+				rows[height++] = row;
+			} else {
+				cleared |= 1<<y;
+			}
+		}
+		if(cleared==0) {
+			int[] columns = _columns.clone();
+			int[] heights = _heights.clone();
+			for(int i=0; i<4; i++) {
+				columns[p.getX(i)] |= 1<<p.getY(i);
+				heights[p.getX(i)] = Math.max(heights[p.getX(i)], p.getY(i)+1);
+			}
+			return new BoardState(rows, _hash ^ Zobrist.lock(p), columns, heights, this, p);
+		}
+		int[] columns = new int[Board.WIDTH];
+		for(int x=0; x<Board.WIDTH; x++) {
+			columns[x] = squeeze(_columns[x] | p.getColumn(x), cleared);
+		}
+		// Rows below the lowest cleared one stay put, with the piece's cells among them
+		int first = Integer.numberOfTrailingZeros(cleared);
+		long hash = _hash ^ Zobrist.lock(p, first) ^ Zobrist.cells(_rows, first) ^ Zobrist.cells(rows, first);
+		// The no-clear count covers every row up to the top of the piece or the stack. Full
+		// rows have no transitions and the rest move down intact, and since the piece rests
+		// on a row that stays, the new top is just the cleared rows lower, so nothing else
+		// drops out of the count.
+		return new BoardState(rows, hash, columns, this.getRowTransitions(p));
+	}
+	
+	// Takes the cleared rows out of a column mask, moving the cells above them down
+	private static int squeeze(int column, int cleared) {
+		for(int c=cleared; c!=0; ) {
+			int y = 31-Integer.numberOfLeadingZeros(c); // Highest first, so lower rows stay put
+			column = column & (1<<y)-1 | column>>>y+1<<y;
+			c ^= 1<<y;
+		}
+		return column;
+	}
+	
+	// Accessors
+	public boolean isOccupied(int x, int y) {
+		if(x<0 || x>9 || y<0 || y>21) {return true;}
+		return (_rows[y] & (1<<x)) != 0;
+	}
+	
+	public int getRow(int y) {
+		return _rows[y];
+	}
+	
+	public long getHash() {
+		return _hash;
+	}
+	
+	public int getColumn(int x) {
+		return _columns[x];
+	}
+	
+	public int getHeight(int x) {
+		return _heights[x];
+	}
+	
+	// Height of column x once p locks, if it clears no rows
+	public int getHeight(int x, Placement p) {
+		return Math.max(_heights[x], 32-Integer.numberOfLeadingZeros(p.getColumn(x)));
+	}
+	
+	// Features of this board, and of the board once p locks if it clears no rows
+	public int getTotalHeight() {
+		return _totalHeight;
+	}
+	
+	public int getTotalHeight(Placement p) {
+		int totalHeight = _totalHeight;
+		for(int x=p.getLeft(); x<=p.getRight(); x++) {
+			totalHeight += this.getHeight(x, p)-_heights[x];
+		}
+		return totalHeight;
+	}
+	
+	public int getHoles() {
+		return _holes;
+	}
+	
+	public int getHoles(Placement p) {
+		// Every cell a column grows by is a hole, except the ones the piece fills
+		int holes = _holes;
+		for(int x=p.getLeft(); x<=p.getRight(); x++) {
+			holes += this.getHeight(x, p)-_heights[x]-Integer.bitCount(p.getColumn(x) & ~_columns[x]);
+		}
+		return holes;
+	}
+	
+	public int getBumpiness() {
+		return _bumpiness;
+	}
+	
+	public int getBumpiness(Placement p) {
+		int bumpiness = _bumpiness;
+		int from = Math.max(1, p.getLeft());
+		int left = _heights[from-1];
+		int afterLeft = this.getHeight(from-1, p);
+		for(int x=from; x<=Math.min(Board.WIDTH-1, p.getRight()+1); x++) {
+			int after = this.getHeight(x, p);
+			bumpiness += Math.abs(after-afterLeft)-Math.abs(_heights[x]-left);
+			left = _heights[x];
+			afterLeft = after;
+		}
+		return bumpiness;
+	}
+	
+	public int getWells() {
+		return _wells;
+	}
+	
+	public int getWells(Placement p) {
+		int wells = _wells;
+		int from = Math.max(0, p.getLeft()-1);
+		int to = Math.min(Board.WIDTH-1, p.getRight()+1);
+		// Heights to the left of, at and to the right of x, before and after
+		int left = from==0 ? Board.HEIGHT : _heights[from-1];
+		int height = _heights[from];
+		int after = this.getHeight(from, p);
+		int afterLeft = left;
+		for(int x=from; x<=to; x++) {
+			int right = x==Board.WIDTH-1 ? Board.HEIGHT : _heights[x+1];
+			int afterRight = x==Board.WIDTH-1 ? Board.HEIGHT : this.getHeight(x+1, p);
+			wells += Math.max(0, Math.min(afterLeft, afterRight)-after)-Math.max(0, Math.min(left, right)-height);
+			left = height;
+			height = right;
+			afterLeft = after;
+			after = afterRight;
+		}
+		return wells;
+	}
+	
+	public int getRowTransitions() {
+		return _rowTransitions;
+	}
+	
+	public int getRowTransitions(Placement p) {
+		int rowTransitions = _rowTransitions;
+		for(int y=p.min(); y<p.min()+p.getRows(); y++) {
+			rowTransitions += rowTransitions(_rows[y] | p.getMask(y));
+			if(y<_top) {rowTransitions -= rowTransitions(_rows[y]);}
+		}
+		return rowTransitions;
+	}
+	
+	public int getColumnTransitions() {
+		return _columnTransitions;
+	}
+	
+	public int getColumnTransitions(Placement p) {
+		int columnTransitions = _columnTransitions;
+		for(int x=p.getLeft(); x<=p.getRight(); x++) {
+			columnTransitions += columnTransitions(_columns[x] | p.getColumn(x))-columnTransitions(_columns[x]);
+		}
+		return columnTransitions;
+	}
+	
+	// Empty cells beneath the top of a column
+	private static int holes(int column) {
+		return 32-Integer.numberOfLeadingZeros(column)-Integer.bitCount(column);
+	}
+	
+	// Changes between filled and empty going up a column from the floor, which counts as
+	// filled, to the empty space above the board
+	private static int columnTransitions(int column) {
+		return Integer.bitCount(column ^ (column<<1 | 1));
+	}
+	
+	// Changes between filled and empty going across a row. The walls count as filled.
+	public static int rowTransitions(int row) {
+		return TRANSITIONS[row];
+	}
+	
+	// Whether a tetromino of the given type and orientation fits at offset (x, y)
+	public boolean fits(int type, int rotation, int x, int y) {
+		return PieceTable.fits(_rows, type, rotation, x, y);
+	}
+	
+	// Number of rows a tetromino of the given type and orientation at offset (x, y) can
+	// fall before it lands. Looked up from the column heights unless a cell is tucked
+	// beneath the top of its column.
+	public int drop(int type, int rotation, int x, int y) {
+		int drop = Board.HEIGHT;
+		for(int i=0; i<4; i++) {
+			int column = x+PieceTable.X[type][rotation][i];
+			int row = y+PieceTable.Y[type][rotation][i];
+			if(row<_heights[column]) {return this.walk(type, rotation, x, y);}
+			drop = Math.min(drop, row-_heights[column]);
+		}
+		return drop;
+	}
+	
+	// Slow path of drop: moves the piece down one row at a time
+	private int walk(int type, int rotation, int x, int y) {
+		int drop = 0;
+		while(this.fits(type, rotation, x, y-drop-1)) {drop++;}
+		return drop;
+	}
+	
+	// Scoring algorithm- low score is better. p is where the candidate's shadow lands.
+	public int getScore(Placement p) {
+		return this.score(p, Integer.MAX_VALUE, null);
+	}
+	
+	// Same as getScore(p) when that is at most bound, otherwise some score above bound
+	public int getScore(Placement p, int bound) {
+		return this.score(p, bound, null);
+	}
+	
+	// Number of cells getScore(p, bound) looks at, for benchmarks
+	public int cells(Placement p, int bound) {
+		int[] cells = new int[1];
+		this.score(p, bound, cells);
+		return cells[0];
+	}
+	
+	// Adds the cells it looks at to cells[0] unless cells is null
+	private int score(Placement p, int bound, int[] cells) {
+		// Simulates line clears (so cleared lines do not interfere with scoring algorithm
+		int simulated = 0;
+		int lines = 0;
+		for(int i=p.min(); i<Math.min(20, p.min()+4); i++) {
+			if((_rows[i] | p.getMask(i))==Board.FULL) {
+				lines++;
+				simulated |= 1<<i;
+			}
+		}
+		int score = -9 * lines; // -9 points for each line cleared
+		if(cells!=null) {cells[0] += 10*Math.max(0, Math.min(20, p.min()+4)-p.min());}
+		int kept = ~simulated & VISIBLE; // Simu-cleared rows are skipped entirely
+		int left = -1; // Walls count as occupied
+		int column = _columns[0] | p.getColumn(0);
+		for(int x=0; x<10; x++) {
+			int right = x==9 ? -1 : _columns[x+1] | p.getColumn(x+1);
+			int filled = column & kept;
+			int shadow = p.getColumn(x) & kept;
+			if(shadow!=0) {
+				// 17 points for each gap beneath the shadow
+				int beneath = (2<<31-Integer.numberOfLeadingZeros(shadow))-1;
+				score += 17*Integer.bitCount(~filled & kept & beneath);
+				// Each shadow block scores a point for every block beneath it, and 15 more for
+				// it and each shadow block beneath it above 15 rows (i.e., as the stacks get
+				// higher, the ai will quickly favor lower positions)
+				int high = 0;
+				for(int s=shadow; s!=0; s &= s-1) {
+					int block = s & -s;
+					if(block>1<<15) {high += 15;}
+					score += Integer.bitCount(filled & block-1)+high;
+				}
+			}
+			// 14 points for generating a tower (tower = only an I can fit cleanly inside):
+			// three cells with both neighbors occupied, in a run of the lower 16 rows with no
+			// block in between
+			int empty = ~column & kept & LOWER;
+			int flanked = empty & left & right;
+			for(int runs=(empty | simulated) & LOWER; runs!=0; ) {
+				int run = runs & ~(runs+(runs & -runs));
+				if(Integer.bitCount(flanked & run)>=3) {score += 14;}
+				runs ^= run;
+			}
+			left = column;
+			column = right;
+			if(cells!=null) {cells[0] += Board.VISIBLE;}
+			if(score>bound) {return score;} // Can't win any more
+		}
+		return score;
+	}
+}
@@ -0,0 +1,35 @@
+package tetris;
+
+/**
+ * The original scoring algorithm (see BoardState.getScore) with the original values of
+ * stored pieces. This is the AI's evaluator unless it is given weights to load.
+ * 
+ * @author dmayans
+ */
+
+public class ClassicEvaluator implements Evaluator {
+	
+	@Override
+	public int score(BoardState state, Placement p) {
+		return state.getScore(p);
+	}
+	
+	@Override
+	public int score(BoardState state, Placement p, int bound) {
+		return state.getScore(p, bound);
+	}
+	
+	// The classic scoring has nothing to share between candidates, so they are scored one
+	// at a time
+	@Override
+	public void score(BoardState state, Batch batch, int[] scores) {
+		for(int i=0; i<batch.size(); i++) {
+			scores[i] = state.getScore(batch.get(i));
+		}
+	}
+	
+	@Override
+	public int hold(int type) {
+		return Constants.SCORES[type];
+	}
+}
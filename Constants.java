@@ -25,7 +25,7 @@ public class Constants {
 	public static final int[] SCORES = {6,0,2,2,4,3,8};
 	
 	
-	// Motion arrays. ROTATE and NROTATE must be 0 to prevent the center of rotation from moving
+	// Motion arrays. ROTATE and NROTATE must be 0 since rotating doesn't move the piece
 	public static final int[] LEFT = {-1,0};
 	public static final int[] RIGHT = {1,0};
 	public static final int[] DOWN = {0,-1};
@@ -0,0 +1,25 @@
+package tetris;
+
+/**
+ * Scores where a candidate lands for the AI. Low scores are better. Implementations have
+ * to be safe to call from several threads at once, since the parallel search shares one.
+ * 
+ * @author dmayans
+ */
+
+public interface Evaluator {
+	
+	// Score of the board once p locks on state and its full rows clear
+	public int score(BoardState state, Placement p);
+	
+	// Same as score(state, p) when that is at most bound. Otherwise the evaluator may stop
+	// as soon as it knows the score is above bound and return any score above it.
+	public int score(BoardState state, Placement p, int bound);
+	
+	// Scores every placement in the batch into scores, exactly as score(state, p) would
+	public void score(BoardState state, Batch batch, int[] scores);
+	
+	// How much it is worth to have a piece of the given type in store. Swapping the
+	// current piece for the stored one costs hold(stored)-hold(current).
+	public int hold(int type);
+}
@@ -0,0 +1,163 @@
+package tetris;
+
+/**
+ * One expectimax search for the AI, for looking further ahead than the preview goes. Where
+ * the next piece is known it is placed every way it fits and the best width of those
+ * boards (by their own score) are searched deeper, as in the beam search. Where it isn't,
+ * the search doesn't guess: the bag can only deal the pieces it has left, each as likely
+ * as the next, so the value there is the average over those pieces of the best line with
+ * each. The value of a line is the sum of the scores of its boards, the same as in the
+ * beam search, so lower is better.
+ * 
+ * With a fork/join pool, every piece a chance node averages over is searched as a task of
+ * its own, so the unknown pieces are searched in parallel. The pieces are always added up
+ * in the same order, so the parallel search returns the same values as the serial one.
+ * The parallel search does not use the cache.
+ * 
+ * A search gives up once it has scored more than its budget of nodes or run past its
+ * deadline. Its values are then meaningless and isAborted() says so. The AI searches each
+ * depth in turn, handing each search what is left of the budget for the whole move.
+ * 
+ * Each thread searching keeps one Worker of scratch space for good, so tasks don't
+ * allocate one apiece.
+ * 
+ * @author dmayans
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Expectimax {
+	
+	private static final int BAG = Constants.TETROMINOES.length;
+	private static final ThreadLocal<Worker> WORKERS = new Workers();
+	
+	private final Evaluator _evaluator;
+	private final ScoreCache _cache; // null = no cache, always null with a pool
+	private final ForkJoinPool _pool; // null = serial search
+	private final int _width;
+	private final long _budget; // Nodes
+	private final long _deadline; // System.nanoTime()
+	private final AtomicLong _nodes;
+	private volatile boolean _aborted;
+	
+	public Expectimax(Evaluator evaluator, ScoreCache cache, ForkJoinPool pool, int width, long budget, long deadline) {
+		_evaluator = evaluator;
+		_pool = pool;
+		_cache = pool==null ? cache : null;
+		_width = Math.max(1, width);
+		_budget = budget;
+		_deadline = deadline;
+		_nodes = new AtomicLong();
+	}
+	
+	// Accessors
+	public long getNodes() {
+		return _nodes.get();
+	}
+	
+	public boolean isAborted() {
+		return _aborted;
+	}
+	
+	// The value of game, placing depth more pieces starting with its current one, whether
+	// that has been dealt yet or not
+	public int search(GameState game, int depth) {
+		if(_pool!=null) {return _pool.invoke(new Node(game, depth));}
+		return this.expect(game, depth, WORKERS.get());
+	}
+	
+	// Averages over the pieces the bag can deal if the current one isn't known yet
+	private int expect(GameState game, int depth, Worker worker) {
+		if(game.getCurrent()!=-1) {return this.decide(game, depth, worker);}
+		int remaining = game.getRemaining();
+		long total = 0;
+		if(_pool!=null && depth>1) {
+			Node[] nodes = new Node[Integer.bitCount(remaining)];
+			int n = 0;
+			for(int type=0; type<BAG; type++) {
+				if((remaining & 1<<type)!=0) {nodes[n++] = new Node(game.deal(type), depth);}
+			}
+			RecursiveTask.invokeAll(nodes);
+			for(int i=0; i<n; i++) {
+				total += nodes[i].join();
+			}
+		} else {
+			for(int type=0; type<BAG; type++) {
+				if((remaining & 1<<type)!=0) {total += this.decide(game.deal(type), depth, worker);}
+			}
+		}
+		return (int) Math.floorDiv(total, Integer.bitCount(remaining));
+	}
+	
+	// The best line for the current piece of game, which has to be known
+	private int decide(GameState game, int depth, Worker worker) {
+		if(_nodes.get()>_budget || System.nanoTime()>_deadline) {_aborted = true;}
+		if(_aborted) {return 0;}
+		BoardState board = game.getBoard();
+		int piece = game.getCurrent();
+		long key = Zobrist.stored(game.getStored()) ^ Zobrist.bag(game.getBag());
+		int count = worker._moves.generate(board, piece);
+		_nodes.addAndGet(count);
+		long[] children = new long[count]; // Score, then position
+		for(int i=0; i<count; i++) {
+			int s = worker._moves.get(i);
+			worker._ghost.place(piece, s);
+			children[i] = ((long) this.score(board, worker._ghost.getPlacement(), key)<<32) + s;
+		}
+		Arrays.sort(children);
+		if(depth==1) {return (int) (children[0]>>32);}
+		int best = Integer.MAX_VALUE;
+		for(int i=0; i<Math.min(_width, count); i++) {
+			worker._ghost.place(piece, (int) children[i]);
+			GameState next = game.apply(worker._ghost.getPlacement());
+			best = Math.min(best, (int) (children[i]>>32)+this.expect(next, depth-1, worker));
+		}
+		return best;
+	}
+	
+	// Scores p on board, going through the cache if there is one
+	private int score(BoardState board, Placement p, long key) {
+		if(_cache==null) {return _evaluator.score(board, p);}
+		key ^= board.getHash() ^ Zobrist.shadow(p);
+		int score = _cache.get(key);
+		if(score==ScoreCache.MISS) {
+			score = _evaluator.score(board, p);
+			_cache.put(key, score);
+		}
+		return score;
+	}
+	
+	// Placement scratch space, one per thread searching
+	private static class Worker {
+		private Ghost _ghost = new Ghost();
+		private MoveGenerator _moves = new MoveGenerator();
+	}
+	
+	// The worker of each thread
+	private static class Workers extends ThreadLocal<Worker> {
+		@Override
+		protected Worker initialValue() {
+			return new Worker();
+		}
+	}
+	
+	// Fork/join task that searches one position with its thread's worker
+	@SuppressWarnings("serial")
+	private class Node extends RecursiveTask<Integer> {
+		private GameState _game;
+		private int _depth;
+		
+		public Node(GameState game, int depth) {
+			_game = game;
+			_depth = depth;
+		}
+		
+		@Override
+		protected Integer compute() {
+			return expect(_game, _depth, WORKERS.get());
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package tetris;
+
+/**
+ * Evaluator that scores a board as a weighted sum of features: aggregate column height,
+ * holes, bumpiness, well depth, row transitions, column transitions and lines cleared.
+ * The weights alone decide how the AI plays.
+ * 
+ * The board keeps its own features up to date (see BoardState), so a candidate that
+ * clears no rows is scored from the changes in the few rows and columns it touches. A
+ * candidate that clears rows shifts the rest of the board, so its features come out of a
+ * single pass down the rows of the board (plus one over the ten column heights), with the
+ * full rows cleared first.
+ * 
+ * A whole Batch of candidates can also be scored at once. Every column feature is then
+ * summed over the batch's column arrays a column at a time, in loops over all the
+ * candidates with nothing but int arithmetic in them, and only the row transitions and
+ * the check for full rows are done a candidate at a time.
+ * 
+ * Weights are whole numbers and are read from a properties file with one key per feature
+ * (see NAMES: height, holes, bumpiness, wells, rowTransitions, columnTransitions and
+ * lines) and one per stored piece (hold.I, hold.O, ... hold.T). Missing keys keep their
+ * defaults. The AI loads the file named by -Dtetris.ai.weights.
+ * 
+ * When no weight but the one for lines is negative, the features only ever add to the
+ * score as the pass goes down the board. Scoring with a bound then stops the pass at the
+ * first row that takes the score past it, give or take a few.
+ * 
+ * @author dmayans
+ */
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+public class FeatureEvaluator implements Evaluator {
+	
+	// Features, in the order of the weight vector
+	public static final int HEIGHT = 0;
+	public static final int HOLES = 1;
+	public static final int BUMPINESS = 2;
+	public static final int WELLS = 3;
+	public static final int ROW_TRANSITIONS = 4;
+	public static final int COLUMN_TRANSITIONS = 5;
+	public static final int LINES = 6;
+	public static final int FEATURES = 7;
+	public static final String[] NAMES = {"height", "holes", "bumpiness", "wells", "rowTransitions",
+		"columnTransitions", "lines"};
+	private static final String[] PIECES = {"I", "O", "J", "L", "Z", "S", "T"};
+	
+	public static final int[] DEFAULTS = {5, 36, 2, 3, 4, 9, -8};
+	
+	private final int[] _weights;
+	private final int[] _hold;
+	private final boolean _cutoff; // Whether the score only grows during the pass
+	
+	public FeatureEvaluator() {
+		this(DEFAULTS, Constants.SCORES);
+	}
+	
+	public FeatureEvaluator(int[] weights, int[] hold) {
+		_weights = weights.clone();
+		_hold = hold.clone();
+		boolean cutoff = true;
+		for(int i=0; i<FEATURES; i++) {
+			if(i!=LINES && _weights[i]<0) {cutoff = false;}
+		}
+		_cutoff = cutoff;
+	}
+	
+	// Reads weights from a properties file
+	public static FeatureEvaluator load(String path) {
+		Properties properties = new Properties();
+		try(InputStream in = new FileInputStream(path)) {
+			properties.load(in);
+		} catch(IOException e) {
+			throw new UncheckedIOException("Can't read weights from "+path, e);
+		}
+		int[] weights = DEFAULTS.clone();
+		for(int i=0; i<FEATURES; i++) {
+			weights[i] = Integer.parseInt(properties.getProperty(NAMES[i], Integer.toString(weights[i])).trim());
+		}
+		int[] hold = Constants.SCORES.clone();
+		for(int i=0; i<PIECES.length; i++) {
+			hold[i] = Integer.parseInt(properties.getProperty("hold."+PIECES[i], Integer.toString(hold[i])).trim());
+		}
+		return new FeatureEvaluator(weights, hold);
+	}
+	
+	// Writes the weights to a properties file that load() reads back
+	public void save(String path) throws IOException {
+		try(PrintWriter out = new PrintWriter(path, "ISO-8859-1")) {
+			out.println("# Weights for tetris.FeatureEvaluator, low scores are better");
+			for(int i=0; i<FEATURES; i++) {
+				out.println(NAMES[i]+"="+_weights[i]);
+			}
+			for(int i=0; i<PIECES.length; i++) {
+				out.println("hold."+PIECES[i]+"="+_hold[i]);
+			}
+		}
+	}
+	
+	// Accessors
+	public int getWeight(int feature) {
+		return _weights[feature];
+	}
+	
+	public int[] getWeights() {
+		return _weights.clone();
+	}
+	
+	@Override
+	public int hold(int type) {
+		return _hold[type];
+	}
+	
+	@Override
+	public int score(BoardState state, Placement p) {
+		return this.extract(state, p, null, Integer.MAX_VALUE, null);
+	}
+	
+	@Override
+	public int score(BoardState state, Placement p, int bound) {
+		return this.extract(state, p, null, _cutoff ? bound : Integer.MAX_VALUE, null);
+	}
+	
+	@Override
+	public void score(BoardState state, Batch batch, int[] scores) {
+		int n = batch.size();
+		batch.layout(state);
+		Arrays.fill(scores, 0, n, 0);
+		for(int x=0; x<Board.WIDTH; x++) {
+			int[] columns = batch.getColumns(x);
+			int[] heights = batch.getHeights(x);
+			for(int i=0; i<n; i++) {
+				int column = columns[i];
+				int h = heights[i];
+				scores[i] += _weights[HEIGHT]*h + _weights[HOLES]*(h-Integer.bitCount(column))
+						+ _weights[COLUMN_TRANSITIONS]*Integer.bitCount(column ^ (column<<1 | 1));
+			}
+			// The walls count as full height, and no column is taller than they are
+			if(x==0) {
+				int[] right = batch.getHeights(x+1);
+				for(int i=0; i<n; i++) {
+					scores[i] += _weights[WELLS]*Math.max(0, right[i]-heights[i]);
+				}
+			} else {
+				int[] left = batch.getHeights(x-1);
+				int[] right = x==Board.WIDTH-1 ? left : batch.getHeights(x+1);
+				for(int i=0; i<n; i++) {
+					scores[i] += _weights[BUMPINESS]*Math.abs(heights[i]-left[i])
+							+ _weights[WELLS]*Math.max(0, Math.min(left[i], right[i])-heights[i]);
+				}
+			}
+		}
+		for(int i=0; i<n; i++) {
+			Placement p = batch.get(i);
+			if(this.clears(state, p)) {
+				scores[i] = this.extract(state, p, null, Integer.MAX_VALUE, null);
+			} else {
+				scores[i] += _weights[ROW_TRANSITIONS]*state.getRowTransitions(p);
+			}
+		}
+	}
+	
+	// Whether any row is full once p locks on state
+	private boolean clears(BoardState state, Placement p) {
+		for(int y=p.min(); y<Math.min(20, p.min()+4); y++) {
+			if((state.getRow(y) | p.getMask(y))==Board.FULL) {return true;}
+		}
+		return false;
+	}
+	
+	// Writes the features of the board once p locks on state into features
+	public void features(BoardState state, Placement p, int[] features) {
+		this.extract(state, p, features, Integer.MAX_VALUE, null);
+	}
+	
+	// Number of cells score(state, p, bound) looks at, for benchmarks
+	public int cells(BoardState state, Placement p, int bound) {
+		int[] cells = new int[1];
+		this.extract(state, p, null, _cutoff ? bound : Integer.MAX_VALUE, cells);
+		return cells[0];
+	}
+	
+	// Returns the weighted sum of the features, and writes them into features unless it is
+	// null. The single pass stops with a partial sum once that is above bound. Adds the cells
+	// it looks at to cells[0] unless cells is null.
+	private int extract(BoardState state, Placement p, int[] features, int bound, int[] cells) {
+		// Rows the placement fills are cleared before anything is counted
+		int full = 0;
+		for(int y=p.min(); y<Math.min(20, p.min()+4); y++) {
+			if((state.getRow(y) | p.getMask(y))==Board.FULL) {full |= 1<<y;}
+		}
+		if(cells!=null) {cells[0] += 10*Math.max(0, Math.min(20, p.min()+4)-p.min());}
+		if(full==0) {
+			// Only the rows and columns the placement touches change
+			if(cells!=null) {cells[0] += Board.HEIGHT*(p.getRight()-p.getLeft()+1) + Board.WIDTH*p.getRows();}
+			return this.sum(state.getTotalHeight(p), state.getHoles(p), state.getBumpiness(p), state.getWells(p),
+					state.getRowTransitions(p), state.getColumnTransitions(p), 0, features);
+		}
+		int lines = Integer.bitCount(full);
+		int cleared = _weights[LINES]*lines;
+		int covered = 0; // Columns with a block at or above the current row
+		int above = 0; // The row above the current one, after clearing
+		long heights = 0; // Five bits per column
+		int height = 0;
+		int holes = 0;
+		int rowTransitions = 0;
+		int columnTransitions = 0;
+		for(int y=Board.HEIGHT-1; y>=0; y--) {
+			if((full & 1<<y)!=0) {continue;}
+			int row = state.getRow(y) | p.getMask(y);
+			int top = row & ~covered; // Columns whose highest block is in this row
+			if(top!=0) {
+				int h = y+1-Integer.bitCount(full & ((1<<y)-1));
+				for(; top!=0; top &= top-1) {
+					heights |= (long) h << 5*Integer.numberOfTrailingZeros(top);
+					height += h;
+				}
+			}
+			covered |= row;
+			holes += Integer.bitCount(covered & ~row);
+			if(covered!=0) {rowTransitions += BoardState.rowTransitions(row);}
+			columnTransitions += Integer.bitCount(row ^ above);
+			above = row;
+			if(cells!=null) {cells[0] += Board.WIDTH;}
+			// Checked every four rows, since most of the score turns up near the bottom of the
+			// board and checking every row costs more than it saves
+			if(bound!=Integer.MAX_VALUE && (y & 3)==0) {
+				int partial = cleared + _weights[HEIGHT]*height + _weights[HOLES]*holes
+						+ _weights[ROW_TRANSITIONS]*rowTransitions + _weights[COLUMN_TRANSITIONS]*columnTransitions;
+				if(partial>bound) {return partial;} // Can't win any more
+			}
+		}
+		columnTransitions += Integer.bitCount(above ^ Board.FULL); // So does the floor
+		int bumpiness = 0;
+		int wells = 0;
+		int left = Board.HEIGHT;
+		for(int x=0; x<Board.WIDTH; x++) {
+			int h = (int) (heights>>5*x & 31);
+			int right = x==Board.WIDTH-1 ? Board.HEIGHT : (int) (heights>>5*(x+1) & 31);
+			if(x>0) {bumpiness += Math.abs(h-left);}
+			wells += Math.max(0, Math.min(left, right)-h);
+			left = h;
+		}
+		if(cells!=null) {cells[0] += Board.WIDTH;}
+		return this.sum(height, holes, bumpiness, wells, rowTransitions, columnTransitions, lines, features);
+	}
+	
+	// Weighted sum of the features, which are also written into features unless it is null
+	private int sum(int height, int holes, int bumpiness, int wells, int rowTransitions, int columnTransitions, int lines,
+			int[] features) {
+		if(features!=null) {
+			features[HEIGHT] = height;
+			features[HOLES] = holes;
+			features[BUMPINESS] = bumpiness;
+			features[WELLS] = wells;
+			features[ROW_TRANSITIONS] = rowTransitions;
+			features[COLUMN_TRANSITIONS] = columnTransitions;
+			features[LINES] = lines;
+		}
+		return _weights[HEIGHT]*height + _weights[HOLES]*holes + _weights[BUMPINESS]*bumpiness
+				+ _weights[WELLS]*wells + _weights[ROW_TRANSITIONS]*rowTransitions
+				+ _weights[COLUMN_TRANSITIONS]*columnTransitions + _weights[LINES]*lines;
+	}
+}
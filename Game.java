@@ -0,0 +1,85 @@
+package tetris;
+
+/**
+ * Headless game of tetris played by the AI. There is no Swing anywhere in here: no timers,
+ * no painting and no panel. Each step asks the AI for a move and locks the piece straight
+ * where the move lands, so a game runs as fast as the AI can think. The rules match the
+ * Swing game: pieces come from the same 7-bag, swapping into an empty store pulls the next
+ * piece, full rows are cleared when a piece locks, and the game ends once a block sits in
+ * the lowest invisible row.
+ * 
+ * @author dmayans
+ */
+
+public class Game {
+	
+	private AI _ai;
+	private UpcomingPieces _upcoming;
+	private GameState _state;
+	private Recorder _recorder; // null = not recording
+	private int _lines;
+	private int _pieces;
+	
+	public Game(AI ai, UpcomingPieces upcoming) {
+		_ai = ai;
+		_upcoming = upcoming;
+		_state = new GameState(new BoardState(new int[Board.HEIGHT]), _upcoming.push(), -1, _upcoming);
+	}
+	
+	// Accessors
+	public GameState getState() {
+		return _state;
+	}
+	
+	public int getLines() {
+		return _lines;
+	}
+	
+	public int getPieces() {
+		return _pieces;
+	}
+	
+	public boolean isOver() {
+		return _state.isOver();
+	}
+	
+	// Records every move from here on. The recorder is the caller's to close.
+	public void setRecorder(Recorder recorder) {
+		_recorder = recorder;
+	}
+	
+	// Pushes a row of garbage in under the stack. Recordings don't know about garbage, so a
+	// game with garbage can't be replayed.
+	public void rise(int garbage) {
+		_state = _state.rise(garbage);
+	}
+	
+	// Plays one piece. Returns false once the game is over.
+	public boolean step() {
+		if(_state.isOver()) {return false;}
+		_ai.newMove(_state);
+		if(_recorder!=null) {
+			for(Integer x=_ai.poll(); x!=null; x=_ai.poll()) {
+				_recorder.input(x);
+			}
+		}
+		GameState next = _state;
+		if(_ai.isSwap()) {
+			// Swapping into an empty store deals the next piece
+			if(next.getStored()==-1) {_upcoming.push();}
+			next = next.hold();
+		}
+		next = next.apply(_ai.getPlacement());
+		_lines += next.getCleared();
+		if(_recorder!=null) {_recorder.lock(_ai.getPosition(), next.getCleared());}
+		_pieces++;
+		// Deals the next piece and brings the preview back up to length
+		_state = new GameState(next.getBoard(), _upcoming.push(), next.getStored(), _upcoming);
+		return !_state.isOver();
+	}
+	
+	// Plays until the game ends or max pieces have locked
+	public void play(int max) {
+		while(_pieces<max && this.step()) {}
+	}
+}
@@ -0,0 +1,102 @@
+package tetris;
+
+/**
+ * Plays many independent headless games in parallel on a work-stealing pool. Each game's
+ * pieces come from a generator split off a master generator in submission order, so a run
+ * deals the same games no matter how many threads play them. Every worker thread owns
+ * its AI, and each game has its own UpcomingPieces and board, so nothing mutable is
+ * shared between workers except the lock-free Tally. Progress is printed every few seconds
+ * while the games run, and games per second and percentiles of lines per game once they
+ * are done. With -Dtetris.replay.dir=DIR every game is recorded there too.
+ * 
+ * Usage: java tetris.GameFarm [games] [max pieces per game] [threads] [seed]
+ * 
+ * @author dmayans
+ */
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class GameFarm {
+	
+	private ForkJoinPool _pool;
+	private ThreadLocal<AI> _ai;
+	
+	public GameFarm(int threads) {
+		_pool = new ForkJoinPool(threads);
+		_ai = new WorkerAI();
+	}
+	
+	// Starts the given number of games, dealt from generators split off source, and returns
+	// right away. Results go into tally.
+	public void submit(int games, int max, SplittableRandom source, Tally tally) {
+		for(int i=0; i<games; i++) {
+			_pool.execute(new Job(source.split(), max, tally));
+		}
+	}
+	
+	// Waits up to the given number of milliseconds for every submitted game. Returns true
+	// once they have all finished.
+	public boolean await(long millis) {
+		return _pool.awaitQuiescence(millis, TimeUnit.MILLISECONDS);
+	}
+	
+	public void shutdown() {
+		_pool.shutdown();
+	}
+	
+	public static void main(String[] args) {
+		int games = args.length>0 ? Integer.parseInt(args[0]) : 1000;
+		int max = args.length>1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+		int threads = args.length>2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length>3 ? Long.parseLong(args[3]) : 0;
+		
+		GameFarm farm = new GameFarm(threads);
+		Tally tally = new Tally();
+		farm.submit(games, max, new SplittableRandom(seed), tally);
+		while(!farm.await(5000)) {
+			System.out.println(tally);
+		}
+		farm.shutdown();
+		System.out.println(tally);
+		System.out.printf("%.2f games/s per thread on %d threads%n", tally.getGamesPerSecond()/threads, threads);
+	}
+	
+	// One game, played by whichever worker picks it up
+	private class Job implements Runnable {
+		private SplittableRandom _random;
+		private int _max;
+		private Tally _tally;
+		
+		public Job(SplittableRandom random, int max, Tally tally) {
+			_random = random;
+			_max = max;
+			_tally = tally;
+		}
+		
+		@Override
+		public void run() {
+			UpcomingPieces upcoming = new UpcomingPieces(_random);
+			Game game = new Game(_ai.get(), upcoming);
+			Recorder recorder = Recorder.open(upcoming.getSeed());
+			game.setRecorder(recorder);
+			game.play(_max);
+			if(recorder!=null) {
+				recorder.close();
+				recorder.await(); // The JVM may exit as soon as the games are done
+			}
+			_tally.record(game.getLines(), game.getPieces());
+		}
+	}
+	
+	// Gives each worker thread an AI of its own
+	private static class WorkerAI extends ThreadLocal<AI> {
+		@Override
+		protected AI initialValue() {
+			AI ai = new AI();
+			ai.setThreads(1); // The farm already keeps every core busy
+			return ai;
+		}
+	}
+}
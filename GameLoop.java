@@ -0,0 +1,482 @@
+package tetris;
+
+/**
+ * Runs a game of tetris on a thread of its own at a fixed timestep. The loop adds up real
+ * time with System.nanoTime and plays one tick for every STEP that has passed, so gravity,
+ * locks and the AI's inputs happen on exact multiples of a millisecond however late the
+ * thread wakes up. If the loop falls more than CATCH_UP ticks behind (a stall, a debugger),
+ * it skips the backlog instead of racing to catch up.
+ * 
+ * Gravity pulls the piece down every rate ticks and the AI plays one input every rate/20
+ * ticks. The rate is 12000/(cleared+15) milliseconds, where cleared is the number of rows
+ * the last lock cleared, and both clocks start over on every lock. No timers are made or
+ * thrown away along the way.
+ * 
+ * Nothing in here touches Swing. Input from other threads is posted as commands and
+ * carried out at the start of the next tick. At most once every FRAME ticks, and only if
+ * the board changed, the loop copies the visible cells into an immutable Frame for the
+ * window to paint, and it reports scores, the stored piece, pauses and the end of the game
+ * to a Listener on the loop thread. Cells only ever sit in whole rows, so there is nothing
+ * to interpolate between ticks: the window simply paints the newest frame. However fast
+ * the AI plays, the window is never asked for more than about 60 frames a second.
+ * 
+ * Frames share the rows that didn't change with the frame before them and know which
+ * cells did, so the window only has to paint those.
+ * 
+ * The same loop also runs headless with play(), as fast as it can and without a clock: the
+ * ticks are only counted, and the game waits for the AI to finish planning rather than
+ * falling back to a quick move.
+ * 
+ * With -Dtetris.replay.dir=DIR every input is recorded (see Recorder), and each game is
+ * written out when it ends, restarts or the loop stops.
+ * 
+ * Usage: java tetris.GameLoop [max pieces] [seed]
+ * 
+ * @author dmayans
+ */
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+public class GameLoop implements Runnable {
+	
+	public static final long STEP = 1000000L; // Nanoseconds per tick
+	private static final int CATCH_UP = 250; // Most ticks played in one go
+	private static final int FRAME = 16; // Fewest ticks between frames
+	
+	// Commands. The first four are the same as Constants.MOTION.
+	public static final int LEFT = 0;
+	public static final int RIGHT = 1;
+	public static final int DOWN = 2; // Moves down one row, locking if it can't
+	public static final int ROTATE = 3;
+	public static final int SWAP = 5;
+	public static final int DROP = 6; // Drops and locks
+	public static final int PAUSE = 7;
+	public static final int RESUME = 8;
+	public static final int TOGGLE_PAUSE = 9;
+	public static final int AI_ON = 10;
+	public static final int AI_OFF = 11;
+	public static final int RESTART = 12;
+	public static final int STOP = 13;
+	
+	private UpcomingPieces _upcoming;
+	private Board _board;
+	private Tetromino _tetromino;
+	private int _stored; // -1 = empty
+	private Planner _planner;
+	private Planner.Plan _plan; // Moves for the current piece, null until one is ready
+	private GameState _game; // The game as the planner sees it, null until the next plan()
+	private GameState _view; // _game limited to the preview
+	private Recorder _recorder; // null = not recording
+	private Recorder _closing; // Closed, but maybe still writing
+	private Listener _listener; // null = headless
+	private ConcurrentLinkedQueue<Integer> _commands;
+	private volatile Frame _frame;
+	private Thread _thread;
+	
+	private long _tick;
+	private long _gravity; // Tick of the next drop
+	private long _move; // Tick of the AI's next input
+	private long _spawned; // Tick the current piece started waiting for a plan
+	private long _published; // Tick of the last frame
+	private int _rate; // Ticks between drops
+	private int _lines;
+	private int _pieces;
+	private boolean _changed; // Whether the board changed since the last frame
+	private boolean _headless;
+	private boolean _running;
+	
+	private boolean _paused;
+	private boolean _over;
+	private boolean _ai;
+	
+	public GameLoop(UpcomingPieces upcoming, Listener listener) {
+		_upcoming = upcoming;
+		_listener = listener;
+		_board = new Board();
+		_tetromino = new Tetromino(_board, _upcoming.push());
+		_stored = -1;
+		_planner = new Planner();
+		_recorder = Recorder.open(_upcoming.getSeed());
+		_commands = new ConcurrentLinkedQueue<Integer>();
+		_frame = new Frame(_board, null);
+		this.reset(0);
+	}
+	
+	public static void main(String[] args) {
+		int max = args.length>0 ? Integer.parseInt(args[0]) : 1000;
+		UpcomingPieces upcoming = args.length>1 ? new UpcomingPieces(Long.parseLong(args[1])) : new UpcomingPieces();
+		GameLoop loop = new GameLoop(upcoming, null);
+		loop.post(AI_ON);
+		long start = System.nanoTime();
+		loop.play(max);
+		double seconds = (System.nanoTime()-start)/1e9;
+		System.out.printf("seed %d: %d pieces, %d lines in %d ticks (%.1f game seconds) in %.2fs: %.0f ticks/s, %.0fx real time%n",
+				upcoming.getSeed(), loop._pieces, loop._lines, loop._tick, loop._tick*STEP/1e9, seconds,
+				loop._tick/seconds, loop._tick*STEP/1e9/seconds);
+	}
+	
+	// Accessors
+	public Frame getFrame() {
+		// Newest picture of the board, safe to paint from any thread
+		return _frame;
+	}
+	
+	public int getLines() {
+		return _lines;
+	}
+	
+	public int getPieces() {
+		return _pieces;
+	}
+	
+	// Queues a command for the next tick. Safe to call from any thread.
+	public void post(int command) {
+		_commands.offer(command);
+	}
+	
+	// Starts playing in real time on a new thread
+	public void start() {
+		_running = true;
+		_thread = new Thread(this, "tetris-loop");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+	
+	// Stops the loop thread and waits until it has written out its recording
+	public void stop() {
+		this.post(STOP);
+		try {
+			_thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Override
+	public void run() {
+		if(_listener!=null) {_listener.scored(_lines, this.upcoming());}
+		long next = System.nanoTime();
+		while(_running) {
+			int ticks = 0;
+			for(; ticks<CATCH_UP && System.nanoTime()-next>=0; ticks++) {
+				this.tick();
+				next += STEP;
+			}
+			if(ticks==CATCH_UP) {next = System.nanoTime();} // Too far behind, skip the backlog
+			this.publish();
+			LockSupport.parkNanos(next-System.nanoTime());
+		}
+		this.stopRecording(true);
+	}
+	
+	// Plays on the calling thread as fast as possible until the game ends or max pieces have
+	// locked
+	public void play(int max) {
+		_headless = true;
+		_running = true;
+		while(_running && !_over && _pieces<max) {
+			if(!this.tick()) {Thread.onSpinWait();} // Waiting on the planner
+		}
+		this.stopRecording(true);
+	}
+	
+	// Plays one tick. Returns false without moving the clock on when playing headless and
+	// the AI is still planning.
+	private boolean tick() {
+		for(Integer c=_commands.poll(); c!=null; c=_commands.poll()) {
+			this.command(c);
+		}
+		if(_ai && !_paused && _tick>=_move) {
+			if(_plan!=null || this.plan()) {
+				this.act();
+				_move = _tick+Math.max(1, _rate/20);
+			} else if(_headless) {
+				return false;
+			}
+		}
+		if(!_paused && _tick>=_gravity) {
+			_gravity += _rate;
+			if(!this.move(Constants.DOWN)) {this.lock();} // Locking starts the clock over
+		}
+		_tick++;
+		return true;
+	}
+	
+	private void command(int c) {
+		if(c==PAUSE || c==RESUME) {
+			_paused = c==PAUSE && !_over;
+		} else if(c==TOGGLE_PAUSE) {
+			if(!_over) {
+				_paused = !_paused;
+				if(_listener!=null) {_listener.paused(_paused);}
+			}
+		} else if(c==AI_ON || c==AI_OFF) {
+			_ai = c==AI_ON;
+			this.replan();
+			_move = _tick;
+		} else if(c==RESTART) {
+			this.restart();
+		} else if(c==STOP) {
+			_running = false;
+		} else if(!_paused) {
+			if(c==SWAP) {
+				this.swap();
+			} else if(c==DROP) {
+				while(this.move(Constants.DOWN)) {} // Recorded a row at a time
+				this.lock();
+			} else if(!this.move(Constants.MOTION[c]) && c==DOWN) {
+				this.lock();
+			}
+		}
+	}
+	
+	// Plays the AI's next input, dropping the piece once the plan runs out
+	private void act() {
+		Integer x = _plan.poll();
+		if(x==null) {
+			while(this.move(Constants.DOWN)) {}
+			this.lock();
+		} else if(x.equals(-1)) {
+			this.swap();
+		} else if(x.equals(DOWN)) {
+			// A run of drops plays in one tick, like holding the down key, so gravity can't
+			// lock the piece before it tucks in at the bottom
+			this.move(Constants.DOWN);
+			while(Integer.valueOf(DOWN).equals(_plan.peek())) {
+				this.move(Constants.MOTION[_plan.poll()]);
+			}
+		} else {
+			this.move(Constants.MOTION[x]);
+		}
+	}
+	
+	// Moves the tetromino, recording the input as its index in Constants.MOTION
+	private boolean move(int[] motion) {
+		if(_recorder!=null) {
+			for(int i=0; i<Constants.MOTION.length; i++) {
+				if(Constants.MOTION[i]==motion) {_recorder.input(i);}
+			}
+		}
+		_changed = true;
+		return _tetromino.move(motion);
+	}
+	
+	// Swaps the tetromino with the stored one. Swapping into an empty store brings in the
+	// next piece.
+	private void swap() {
+		if(_recorder!=null) {_recorder.input(-1);}
+		_tetromino.hide();
+		int type = _tetromino.getType();
+		if(_stored==-1) {
+			_tetromino = new Tetromino(_board, _upcoming.push());
+			this.reset(0);
+			if(_listener!=null) {_listener.scored(_lines, this.upcoming());}
+		} else {
+			_tetromino = new Tetromino(_board, _stored);
+		}
+		_stored = type;
+		_changed = true;
+		_game = null;
+		if(_listener!=null) {_listener.stored(_stored);}
+	}
+	
+	// Locks the tetromino where it is. Clears rows, checks for game over, etc.
+	private void lock() {
+		int min = _tetromino.min();
+		_tetromino.lock();
+		int cleared = _board.clearRow(min);
+		if(_recorder!=null) {_recorder.lock(_tetromino.getPosition(), cleared);}
+		_lines += cleared;
+		_pieces++;
+		_changed = true;
+		if(_board.isOver()) {
+			_paused = true;
+			_over = true;
+			this.stopRecording(false);
+			if(_listener!=null) {_listener.over();}
+		} else {
+			// If the game doesn't end, generate a new tetromino
+			_tetromino = new Tetromino(_board, _upcoming.push());
+		}
+		this.reset(cleared);
+		this.replan();
+		if(_listener!=null) {_listener.scored(_lines, this.upcoming());}
+	}
+	
+	// Sets the drop rate after a lock that cleared some rows, starting both clocks over
+	private void reset(int cleared) {
+		_rate = 12000/(cleared+15);
+		_gravity = _tick+_rate;
+		_move = _tick+_rate/20;
+	}
+	
+	private void restart() {
+		this.stopRecording(false);
+		_upcoming.shuffle();
+		_recorder = Recorder.open(_upcoming.getSeed());
+		_board.clear();
+		_tetromino = new Tetromino(_board, _upcoming.push());
+		_stored = -1;
+		_lines = 0;
+		_pieces = 0;
+		_paused = false;
+		_over = false;
+		_changed = true;
+		this.reset(0);
+		this.replan();
+		if(_listener!=null) {
+			_listener.stored(_stored);
+			_listener.scored(_lines, this.upcoming());
+		}
+	}
+	
+	// Closes the recording without waiting on the disk, unless wait says the loop is done
+	// and the file has to be complete before the program can exit. The last recording
+	// closed without waiting is kept in _closing for that wait.
+	private void stopRecording(boolean wait) {
+		if(_recorder!=null) {
+			_recorder.close();
+			_closing = _recorder;
+			_recorder = null;
+		}
+		if(wait && _closing!=null) {
+			_closing.await();
+			_closing = null;
+		}
+	}
+	
+	// Forgets the plan for the last piece, and the game it was planned for
+	private void replan() {
+		_plan = null;
+		_game = null;
+		_spawned = _tick;
+	}
+	
+	// Picks up the plan for the current piece and starts planning for the one after it.
+	// Once a whole drop interval has passed without a plan, settles for a quick one, except
+	// when headless. Returns false while still waiting. The game is only snapshot once per
+	// piece, since waiting asks again every tick and only a lock or a swap changes it.
+	private boolean plan() {
+		if(_over) {return false;}
+		if(_game==null) {
+			_game = this.state(UpcomingPieces.PREVIEW+2);
+			_view = _game.limit(UpcomingPieces.PREVIEW);
+		}
+		_plan = _planner.take(_view);
+		if(_plan==null) {
+			_planner.request(_view);
+			if(_headless || _tick-_spawned<_rate) {return false;}
+			_plan = _planner.fallback(_view);
+		}
+		GameState next = _planner.predict(_game, _plan);
+		if(next!=null) {_planner.request(next.limit(UpcomingPieces.PREVIEW));}
+		return true;
+	}
+	
+	// The game as it stands, knowing the given number of upcoming pieces
+	private GameState state(int preview) {
+		_tetromino.hide(); // Keeps the current tetromino out of the snapshot
+		BoardState board = _board.snapshot();
+		_tetromino.show();
+		return new GameState(board, _tetromino.getType(), _stored, _upcoming, preview);
+	}
+	
+	private int[] upcoming() {
+		int[] upcoming = new int[UpcomingPieces.PREVIEW];
+		for(int i=0; i<upcoming.length; i++) {
+			upcoming[i] = _upcoming.peek(i+1);
+		}
+		return upcoming;
+	}
+	
+	// Hands the board to the window if it changed, unless the last frame was too recent
+	private void publish() {
+		if(!_changed || _listener==null || _tick-_published<FRAME) {return;}
+		_changed = false;
+		_published = _tick;
+		_frame = new Frame(_board, _frame);
+		_listener.changed(_frame);
+	}
+	
+	/**
+	 * Receives what happens in a game, on the loop thread. Implementations that touch Swing
+	 * hand the work to the event dispatch thread.
+	 */
+	public interface Listener {
+		// A new frame is ready
+		void changed(Frame frame);
+		
+		// A piece locked or came in, with the lines cleared so far and the upcoming pieces
+		void scored(int lines, int[] upcoming);
+		
+		// The stored piece changed (-1 = empty)
+		void stored(int type);
+		
+		void paused(boolean paused);
+		
+		void over();
+	}
+	
+	/**
+	 * Immutable copy of the colors of the visible cells. Rows that are the same as in the
+	 * previous frame are shared with it, and the frame keeps the bounds of the cells that
+	 * changed since then.
+	 */
+	public static class Frame {
+		private final Color[][] _colors;
+		private final Rectangle _dirty; // In pixels, null if nothing changed
+		
+		// Copies the board, sharing unchanged rows with previous (null = none)
+		public Frame(Board board, Frame previous) {
+			_colors = new Color[Board.VISIBLE][];
+			int left = Board.WIDTH, right = -1, bottom = Board.VISIBLE, top = -1;
+			for(int y=0; y<Board.VISIBLE; y++) {
+				Color[] row = new Color[Board.WIDTH];
+				boolean changed = false;
+				for(int x=0; x<Board.WIDTH; x++) {
+					row[x] = board.getColor(x, y);
+					if(previous!=null && previous._colors[y][x]==row[x]) {continue;}
+					changed = true;
+					left = Math.min(left, x);
+					right = Math.max(right, x);
+					bottom = Math.min(bottom, y);
+					top = Math.max(top, y);
+				}
+				_colors[y] = changed ? row : previous._colors[y];
+			}
+			_dirty = top==-1 ? null : new Rectangle(30*left, 570-30*top, 30*(right-left+1)+1, 30*(top-bottom+1)+1);
+		}
+		
+		public Color getColor(int x, int y) {
+			return _colors[y][x];
+		}
+		
+		// Area of the window that changed since the previous frame, null if none
+		public Rectangle getDirty() {
+			return _dirty;
+		}
+		
+		public void paint(Graphics g) {
+			Board.paint(g, _colors);
+		}
+		
+		// Paints over a picture of the painted frame, only redrawing the cells that differ
+		// (null = paint everything)
+		public void paint(Graphics g, Frame painted) {
+			if(painted==null) {
+				this.paint(g);
+				return;
+			}
+			for(int y=0; y<Board.VISIBLE; y++) {
+				if(_colors[y]==painted._colors[y]) {continue;}
+				for(int x=0; x<Board.WIDTH; x++) {
+					if(_colors[y][x]!=painted._colors[y][x]) {Board.paintCell(g, x, y, _colors[y][x]);}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package tetris;
+
+/**
+ * Immutable snapshot of everything that decides how a game goes on: the locked cells, the
+ * falling piece, the stored piece and the upcoming pieces the player can see, plus where
+ * the falling piece sits in its bag of seven. None of it lives in Swing, so the AI can fork
+ * a game as often as it likes and throw the forks away. hold() and apply() return new
+ * states and leave this one as it was. A fork shares the queue with the state it came from
+ * (the queue is never written, each state just starts further along it), so applying a
+ * placement costs one copy of the rows and nothing else.
+ * 
+ * Past the end of the queue the next piece hasn't been dealt yet. Its type is -1 until
+ * deal() fills it in, and getRemaining() tells which pieces the bag has left to deal.
+ * 
+ * @author dmayans
+ */
+
+import java.util.Arrays;
+
+public class GameState {
+	
+	private static final int BAG = Constants.TETROMINOES.length;
+	
+	private final BoardState _board;
+	private final int _current; // -1 = not dealt yet
+	private final int _stored; // -1 = empty
+	private final int[] _queue; // Shared between forks, never written
+	private final int _next; // Index of the piece after the current one in _queue
+	private final int _bag; // Position of the current piece within its bag
+	private final int _dealt; // Pieces dealt from the current bag so far, one bit per type
+	private final int _cleared; // Rows cleared by the placement that led here
+	
+	// A game whose upcoming pieces aren't known. The current piece is taken to start a bag.
+	public GameState(BoardState board, int current, int stored) {
+		this(board, current, stored, new int[0], 0);
+	}
+	
+	// A game that knows the first length upcoming pieces in preview. The current piece is
+	// taken to start a bag.
+	public GameState(BoardState board, int current, int stored, int[] preview, int length) {
+		this(board, current, stored, Arrays.copyOf(preview, length), 0, 0, 1<<current, 0);
+	}
+	
+	// A game dealt by upcoming, which the shell shows PREVIEW pieces of
+	public GameState(BoardState board, int current, int stored, UpcomingPieces upcoming) {
+		this(board, current, stored, upcoming, UpcomingPieces.PREVIEW);
+	}
+	
+	// A game dealt by upcoming that knows its next preview pieces (at most 7)
+	public GameState(BoardState board, int current, int stored, UpcomingPieces upcoming, int preview) {
+		this(board, current, stored, preview(upcoming, preview), 0, upcoming.position(), upcoming.dealt(), 0);
+	}
+	
+	private GameState(BoardState board, int current, int stored, int[] queue, int next, int bag, int dealt, int cleared) {
+		_board = board;
+		_current = current;
+		_stored = stored;
+		_queue = queue;
+		_next = next;
+		_bag = bag;
+		_dealt = dealt;
+		_cleared = cleared;
+	}
+	
+	private static int[] preview(UpcomingPieces upcoming, int preview) {
+		int[] queue = new int[preview];
+		for(int i=0; i<queue.length; i++) {
+			queue[i] = upcoming.peek(i+1);
+		}
+		return queue;
+	}
+	
+	// Accessors
+	public BoardState getBoard() {
+		return _board;
+	}
+	
+	public int getCurrent() {
+		return _current;
+	}
+	
+	public int getStored() {
+		return _stored;
+	}
+	
+	public int getBag() {
+		return _bag;
+	}
+	
+	public int getCleared() {
+		return _cleared;
+	}
+	
+	// The i-th piece after the current one, or -1 if it isn't known yet
+	public int peek(int i) {
+		if(_next+i-1<_queue.length) {return _queue[_next+i-1];}
+		return -1;
+	}
+	
+	// Number of upcoming pieces that are known
+	public int getPreview() {
+		return _queue.length-_next;
+	}
+	
+	// Pieces the current bag has yet to deal, one bit per type
+	public int getRemaining() {
+		return ((1<<BAG)-1) & ~_dealt;
+	}
+	
+	// The current piece hold() would bring in, or -1 if it isn't known yet, and the place in
+	// the bag it would be at. A search can look at a swap through these without making the
+	// swapped state.
+	public int getHeldCurrent() {
+		return _stored==-1 ? this.peek(1) : _stored;
+	}
+	
+	public int getHeldBag() {
+		return _stored==-1 ? (_bag+1)%BAG : _bag;
+	}
+	
+	// Whether other is the same position: the same cells, current and stored pieces, place
+	// in the bag and known upcoming pieces
+	public boolean matches(GameState other) {
+		if(_current!=other._current || _stored!=other._stored || _bag!=other._bag || _dealt!=other._dealt
+				|| this.getPreview()!=other.getPreview()) {
+			return false;
+		}
+		for(int i=1; i<=this.getPreview(); i++) {
+			if(this.peek(i)!=other.peek(i)) {return false;}
+		}
+		for(int y=0; y<Board.HEIGHT; y++) {
+			if(_board.getRow(y)!=other._board.getRow(y)) {return false;}
+		}
+		return true;
+	}
+	
+	// Whether this is the position of a live game: the cells of board, with current falling
+	// and stored in storage, dealt by upcoming (null if the upcoming pieces aren't known).
+	// Nothing is allocated, so an unchanged game can be checked again for free.
+	public boolean matches(Board board, int current, int stored, UpcomingPieces upcoming) {
+		if(_current!=current || _stored!=stored) {return false;}
+		if(upcoming==null) {
+			if(this.getPreview()!=0 || _bag!=0 || _dealt!=1<<current) {return false;}
+		} else {
+			if(this.getPreview()!=UpcomingPieces.PREVIEW || _bag!=upcoming.position() || _dealt!=upcoming.dealt()) {
+				return false;
+			}
+			for(int i=1; i<=UpcomingPieces.PREVIEW; i++) {
+				if(this.peek(i)!=upcoming.peek(i)) {return false;}
+			}
+		}
+		for(int y=0; y<Board.HEIGHT; y++) {
+			if(_board.getRow(y)!=board.getRow(y)) {return false;}
+		}
+		return true;
+	}
+	
+	// Checks to see if any block is in the lowest invisible row
+	public boolean isOver() {
+		return _board.getRow(20) != 0;
+	}
+	
+	// Swaps the current piece with the stored one. Swapping into an empty store brings in
+	// the next piece.
+	public GameState hold() {
+		if(_stored==-1) {
+			return this.advance(_board, _current, 0);
+		}
+		return new GameState(_board, _stored, _current, _queue, _next, _bag, _dealt, 0);
+	}
+	
+	// Locks the current piece where p lands, clears full rows and brings in the next piece
+	public GameState apply(Placement p) {
+		int cleared = 0;
+		for(int y=p.min(); y<Math.min(20, p.min()+4); y++) {
+			if((_board.getRow(y) | p.getMask(y))==Board.FULL) {cleared++;}
+		}
+		return this.advance(_board.apply(p), _stored, cleared);
+	}
+	
+	// Fills in the current piece once the bag has dealt it. Only meaningful when the current
+	// piece isn't known (past the end of the queue).
+	public GameState deal(int type) {
+		return new GameState(_board, type, _stored, _queue, _next, _bag, _dealt | 1<<type, _cleared);
+	}
+	
+	// The same game with a row of garbage pushed in under the stack. Everything else moves
+	// up a row, and a block pushed into the lowest invisible row ends the game.
+	public GameState rise(int garbage) {
+		int[] rows = new int[Board.HEIGHT];
+		rows[0] = garbage;
+		for(int y=1; y<Board.HEIGHT; y++) {
+			rows[y] = _board.getRow(y-1);
+		}
+		return new GameState(new BoardState(rows), _current, _stored, _queue, _next, _bag, _dealt, _cleared);
+	}
+	
+	// The same game knowing at most preview of its upcoming pieces
+	public GameState limit(int preview) {
+		if(this.getPreview()<=preview) {return this;}
+		int[] queue = Arrays.copyOfRange(_queue, _next, _next+preview);
+		return new GameState(_board, _current, _stored, queue, 0, _bag, _dealt, _cleared);
+	}
+	
+	// Moves on to the next piece in the queue
+	private GameState advance(BoardState board, int stored, int cleared) {
+		int bag = (_bag+1)%BAG;
+		int dealt = bag==0 ? 0 : _dealt;
+		int current = -1;
+		if(_next<_queue.length) {
+			current = _queue[_next];
+			dealt |= 1<<current;
+		}
+		return new GameState(board, current, stored, _queue, Math.min(_next+1, _queue.length), bag, dealt, cleared);
+	}
+}
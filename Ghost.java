@@ -0,0 +1,42 @@
+package tetris;
+
+/**
+ * Scratch piece the AI uses to turn the lock positions found by a MoveGenerator into
+ * placements it can score. A ghost never touches a live board and reuses its arrays
+ * between candidates. A ghost is not thread safe, so every thread scoring candidates
+ * owns its own.
+ * 
+ * @author dmayans
+ */
+
+public class Ghost {
+	
+	private int[] _x;
+	private int[] _y;
+	private Placement _placement;
+	
+	public Ghost() {
+		_x = new int[4];
+		_y = new int[4];
+		_placement = new Placement();
+	}
+	
+	// Accessor
+	public Placement getPlacement() {
+		// Where the ghost was last placed
+		return _placement;
+	}
+	
+	// Puts a piece of the given type at position s of a MoveGenerator. The result is in
+	// getPlacement().
+	public void place(int type, int s) {
+		int r = MoveGenerator.rotation(s);
+		int x = MoveGenerator.x(s);
+		int y = MoveGenerator.y(s);
+		for(int i=0; i<4; i++) {
+			_x[i] = x+PieceTable.X[type][r][i];
+			_y[i] = y+PieceTable.Y[type][r][i];
+		}
+		_placement.set(type, _x, _y);
+	}
+}
@@ -0,0 +1,176 @@
+package tetris;
+
+/**
+ * Finds every place a tetromino can lock by searching the positions it can reach the way
+ * a player would: left, right, rotate (with kicks) and down. A position is a rotation and
+ * an offset from the spawn, and the search is breadth first on the board's row masks, so
+ * each lock position is found along a path with the fewest moves, counting a drop as one
+ * move however far it falls. That includes tucks under overhangs and spins that a
+ * rotate-then-shift script never tries. The game only moves a piece down a row at a time,
+ * so path() spells every drop but the last out as one DOWN per row, and the commands are
+ * not always the fewest that reach the position.
+ * 
+ * Moving down drops the piece as far as it will go in one input, and a piece only moves
+ * sideways or rotates in the spawn rows or once it has landed. The only other way down is
+ * a single row at the spawn when the top of the board blocks a rotation, which lets the I
+ * turn upright. Orientations that cover the same cells (see PieceTable.SAME) are reported
+ * only once.
+ * 
+ * A generator reuses its arrays between searches, so it allocates nothing and is not
+ * thread safe.
+ * 
+ * @author dmayans
+ */
+
+public class MoveGenerator {
+	
+	// Offsets that keep some piece on the board run from -5 to 5 in x and -21 to 1 in y
+	private static final int COLUMNS = 11;
+	private static final int ROWS = 23;
+	private static final int X_OFFSET = 5;
+	private static final int Y_OFFSET = 21;
+	public static final int STATES = 4*COLUMNS*ROWS; // Number of distinct positions
+	
+	// Inputs, numbered the same as Constants.MOTION
+	private static final int LEFT = 0;
+	private static final int RIGHT = 1;
+	private static final int DOWN = 2;
+	private static final int ROTATE = 3;
+	
+	private BoardState _state;
+	private int _type;
+	private int _search; // Counts searches, so marks never need clearing
+	private int[] _seen; // Last search that reached each position
+	private int[] _locked; // Last search that reported each lock position
+	private int[] _parent; // Position each one was reached from, -1 for the spawn
+	private int[] _input; // Input that reached each position
+	private int[] _queue;
+	private int[] _placements;
+	private int _count;
+	
+	public MoveGenerator() {
+		_seen = new int[STATES];
+		_locked = new int[STATES];
+		_parent = new int[STATES];
+		_input = new int[STATES];
+		_queue = new int[STATES];
+		_placements = new int[STATES];
+	}
+	
+	// Positions are numbered from 0 to STATES-1
+	public static int index(int rotation, int x, int y) {
+		return (rotation*COLUMNS + x+X_OFFSET)*ROWS + y+Y_OFFSET;
+	}
+	
+	public static int rotation(int s) {
+		return s/(COLUMNS*ROWS);
+	}
+	
+	public static int x(int s) {
+		return s/ROWS%COLUMNS - X_OFFSET;
+	}
+	
+	public static int y(int s) {
+		return s%ROWS - Y_OFFSET;
+	}
+	
+	// Accessors for the lock positions found by the last search, in the order found
+	public int getCount() {
+		return _count;
+	}
+	
+	public int get(int i) {
+		return _placements[i];
+	}
+	
+	// Searches every position a freshly spawned piece of the given type can reach on the
+	// board. Returns the number of lock positions found.
+	public int generate(BoardState state, int type) {
+		_state = state;
+		_type = type;
+		_search++;
+		_count = 0;
+		int spawn = index(0, 0, 0);
+		_parent[spawn] = -1;
+		if(!state.fits(type, 0, 0, 0)) {
+			// The piece can't even spawn, so it locks where it is
+			_placements[_count++] = spawn;
+			return _count;
+		}
+		_seen[spawn] = _search;
+		_queue[0] = spawn;
+		int tail = 1;
+		for(int head=0; head<tail; head++) {
+			int s = _queue[head];
+			int r = rotation(s);
+			int x = x(s);
+			int y = y(s);
+			int drop = state.drop(type, r, x, y);
+			if(drop==0) {
+				int same = index(PieceTable.SAME[type][r], x+PieceTable.SHIFT_X[type][r], y+PieceTable.SHIFT_Y[type][r]);
+				if(_locked[same]!=_search) {
+					_locked[same] = _search;
+					_placements[_count++] = s;
+				}
+			} else {
+				tail = this.visit(s, r, x, y-drop, DOWN, tail);
+				// A piece in the air below the spawn rows could only have fallen there, so
+				// anything it could do on the way down it can do from where it lands
+				if(y<-1) {continue;}
+			}
+			tail = this.visit(s, r, x-1, y, LEFT, tail);
+			tail = this.visit(s, r, x+1, y, RIGHT, tail);
+			boolean rotated = false;
+			for(int[] kick : PieceTable.kicks(type, Constants.ROTATE)) {
+				if(state.fits(type, (r+1)%4, x+kick[0], y+kick[1])) {
+					tail = this.visit(s, (r+1)%4, x+kick[0], y+kick[1], ROTATE, tail);
+					rotated = true;
+					break;
+				}
+			}
+			if(!rotated && y==0 && drop>1) {tail = this.visit(s, r, x, y-1, DOWN, tail);}
+		}
+		return _count;
+	}
+	
+	// Queues the position reached from s by the given input, if it is open and new
+	private int visit(int s, int rotation, int x, int y, int input, int tail) {
+		if(x<-X_OFFSET || x>=COLUMNS-X_OFFSET || y<-Y_OFFSET || y>=ROWS-Y_OFFSET) {return tail;}
+		int next = index(rotation, x, y);
+		if(_seen[next]==_search || !_state.fits(_type, rotation, x, y)) {return tail;}
+		_seen[next] = _search;
+		_parent[next] = s;
+		_input[next] = input;
+		_queue[tail] = next;
+		return tail+1;
+	}
+	
+	// Number of commands path() writes for lock position s
+	public int length(int s) {
+		int length = 0;
+		for(int p=s; _parent[p]!=-1; p=_parent[p]) {
+			if(_input[p]!=DOWN) {
+				length++;
+			} else if(p!=s) {
+				length += y(_parent[p])-y(p);
+			}
+		}
+		return length;
+	}
+	
+	// Writes the commands that take a freshly spawned piece to lock position s, starting
+	// at offset. Drops become one command per row, except the last one, which is left off
+	// since the piece is dropped once the commands run out.
+	public void path(int s, int[] commands, int offset) {
+		int i = offset+this.length(s);
+		for(int p=s; _parent[p]!=-1; p=_parent[p]) {
+			if(_input[p]!=DOWN) {
+				commands[--i] = _input[p];
+			} else if(p!=s) {
+				for(int j=y(p); j<y(_parent[p]); j++) {
+					commands[--i] = DOWN;
+				}
+			}
+		}
+	}
+}
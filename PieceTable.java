@@ -0,0 +1,103 @@
+package tetris;
+
+/**
+ * Precomputed cells of every tetromino in every orientation, plus the wall kicks tried
+ * when a rotation is blocked. The cells are worked out once from the shapes and centers
+ * of rotation in Constants, using the same rotation as before, so moving and rotating a
+ * piece only needs integer table lookups. Every orientation is also stored as row masks,
+ * which lets a whole piece be tested against a board's row masks in at most four ANDs.
+ * 
+ * Positions are offsets from where the piece spawns: a piece at (x, y) in orientation r
+ * covers (x+X[type][r][i], y+Y[type][r][i]). Some orientations cover the same cells as an
+ * earlier one moved over (the O in every orientation, the I, S and Z turned halfway), so
+ * SAME[type][r] names the first orientation with that shape, and a piece at (x, y) in r
+ * covers the same cells as one at (x+SHIFT_X[type][r], y+SHIFT_Y[type][r]) in SAME[type][r].
+ * 
+ * @author dmayans
+ */
+
+import java.util.Arrays;
+
+public class PieceTable {
+	
+	public static final int[][][] X = new int[7][4][4];
+	public static final int[][][] Y = new int[7][4][4];
+	public static final int[][] SAME = new int[7][4];
+	public static final int[][] SHIFT_X = new int[7][4];
+	public static final int[][] SHIFT_Y = new int[7][4];
+	
+	// Offsets tried in order when a rotation is blocked. The first is the plain rotation.
+	private static final int[][] KICKS = {{0,0},{1,0},{-1,0}};
+	private static final int[][] I_KICKS = {{0,0},{1,0},{-1,0},{2,0},{-2,0}}; // The I is wider
+	private static final int[][] NO_KICKS = {{0,0}};
+	
+	private static final int[][] MIN_X = new int[7][4];
+	private static final int[][] MAX_X = new int[7][4];
+	private static final int[][] MIN_Y = new int[7][4];
+	private static final int[][] MAX_Y = new int[7][4];
+	private static final int[][][] MASKS = new int[7][4][]; // Rows from MIN_Y up, from column MIN_X
+	
+	static {
+		for(int t=0; t<7; t++) {
+			int[][] type = Constants.TETROMINOES[t];
+			// Spawn position, as set up by Tetromino
+			X[t][0][3] = 4;
+			Y[t][0][3] = 20;
+			for(int i=0; i<3; i++) {
+				X[t][0][i] = 3+type[0][i];
+				Y[t][0][i] = 20+type[1][i];
+			}
+			// Center of rotation is in halves, so work in doubled coordinates
+			int cx = 8+type[3][0];
+			int cy = 40+type[3][1];
+			for(int r=1; r<4; r++) {
+				for(int i=0; i<4; i++) {
+					X[t][r][i] = Math.floorDiv(cx-cy+2*Y[t][r-1][i], 2);
+					Y[t][r][i] = Math.floorDiv(cy+cx-2*X[t][r-1][i], 2);
+				}
+			}
+			for(int r=0; r<4; r++) {
+				MIN_X[t][r] = MIN_Y[t][r] = Integer.MAX_VALUE;
+				MAX_X[t][r] = MAX_Y[t][r] = Integer.MIN_VALUE;
+				for(int i=0; i<4; i++) {
+					MIN_X[t][r] = Math.min(MIN_X[t][r], X[t][r][i]);
+					MAX_X[t][r] = Math.max(MAX_X[t][r], X[t][r][i]);
+					MIN_Y[t][r] = Math.min(MIN_Y[t][r], Y[t][r][i]);
+					MAX_Y[t][r] = Math.max(MAX_Y[t][r], Y[t][r][i]);
+				}
+				MASKS[t][r] = new int[MAX_Y[t][r]-MIN_Y[t][r]+1];
+				for(int i=0; i<4; i++) {
+					MASKS[t][r][Y[t][r][i]-MIN_Y[t][r]] |= 1<<(X[t][r][i]-MIN_X[t][r]);
+				}
+				// Same masks means the same shape, only moved
+				SAME[t][r] = r;
+				for(int s=r-1; s>=0; s--) {
+					if(Arrays.equals(MASKS[t][s], MASKS[t][r])) {SAME[t][r] = s;}
+				}
+				SHIFT_X[t][r] = MIN_X[t][r]-MIN_X[t][SAME[t][r]];
+				SHIFT_Y[t][r] = MIN_Y[t][r]-MIN_Y[t][SAME[t][r]];
+			}
+		}
+	}
+	
+	// Whether a piece of the given type and orientation at (x, y) stays on the board and
+	// clear of every block in rows
+	public static boolean fits(int[] rows, int type, int r, int x, int y) {
+		int left = x+MIN_X[type][r];
+		int bottom = y+MIN_Y[type][r];
+		if(left<0 || x+MAX_X[type][r]>=Board.WIDTH || bottom<0 || y+MAX_Y[type][r]>=Board.HEIGHT) {
+			return false;
+		}
+		int[] masks = MASKS[type][r];
+		for(int j=0; j<masks.length; j++) {
+			if((rows[bottom+j] & (masks[j]<<left))!=0) {return false;}
+		}
+		return true;
+	}
+	
+	// Kicks to try when rotating. NROTATE (non-recursive rotation) never kicks.
+	public static int[][] kicks(int type, int[] typeOfMotion) {
+		if(typeOfMotion==Constants.NROTATE) {return NO_KICKS;}
+		return type==0 ? I_KICKS : KICKS;
+	}
+}
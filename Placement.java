@@ -0,0 +1,101 @@
+package tetris;
+
+/**
+ * Where a tetromino comes to rest: its type and its four cells, plus the same cells as row
+ * masks and as column masks for the scoring algorithm. Placements are reused as scratch
+ * space by the AI, so set() overwrites the previous contents instead of making a new
+ * object.
+ * 
+ * @author dmayans
+ */
+
+public class Placement {
+	
+	private int _type;
+	private int[] _x;
+	private int[] _y;
+	private int _min;
+	private int[] _masks; // Row masks for rows _min to _min+3
+	private int _rows; // Rows it covers, from _min up
+	private int _left;
+	private int _right;
+	private int[] _columns; // Column masks for columns _left to _right
+	
+	public Placement() {
+		_x = new int[4];
+		_y = new int[4];
+		_masks = new int[4];
+		_columns = new int[4];
+	}
+	
+	// Accessors
+	public int getType() {
+		return _type;
+	}
+	
+	public int getX(int i) {
+		return _x[i];
+	}
+	
+	public int getY(int i) {
+		return _y[i];
+	}
+	
+	public int min() {
+		// Returns the lowest Y coordinate
+		return _min;
+	}
+	
+	public int getMask(int y) {
+		// Returns the cells of this placement in row y
+		if(y<_min || y>_min+3) {return 0;}
+		return _masks[y-_min];
+	}
+	
+	public int getRows() {
+		return _rows;
+	}
+	
+	public int getLeft() {
+		return _left;
+	}
+	
+	public int getRight() {
+		return _right;
+	}
+	
+	public int getColumn(int x) {
+		// Returns the cells of this placement in column x, one bit per row
+		if(x<_left || x>_right) {return 0;}
+		return _columns[x-_left];
+	}
+	
+	// Mutator
+	public void set(int type, int[] x, int[] y) {
+		_type = type;
+		_min = y[0];
+		int max = y[0];
+		_left = x[0];
+		_right = x[0];
+		for(int i=0; i<4; i++) {
+			_x[i] = x[i];
+			_y[i] = y[i];
+			_min = Math.min(_min, y[i]);
+			max = Math.max(max, y[i]);
+			_left = Math.min(_left, x[i]);
+			_right = Math.max(_right, x[i]);
+			_masks[i] = 0;
+			_columns[i] = 0;
+		}
+		for(int i=0; i<4; i++) {
+			_masks[y[i]-_min] |= 1<<x[i];
+			_columns[x[i]-_left] |= 1<<y[i];
+		}
+		_rows = max-_min+1;
+	}
+	
+	// Copies another placement
+	public void set(Placement p) {
+		this.set(p._type, p._x, p._y);
+	}
+}
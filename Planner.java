@@ -0,0 +1,161 @@
+package tetris;
+
+/**
+ * Plans the AI's moves for the Swing game on a thread of its own, so a deep search never
+ * holds up the game loop, input or painting. The game requests a plan for a
+ * position and picks it up on a later tick. Finished plans are handed over through a
+ * single atomic reference, so neither side ever waits on a lock. Only the newest request
+ * is searched: requests that were overtaken before the planner got to them are skipped,
+ * and a plan that no longer matches the game is ignored when it is picked up.
+ * 
+ * Planning starts before the piece it is for has even spawned. Once the game starts
+ * playing a plan, predict() works out the position the plan leads to from the preview,
+ * and that position is searched while the current piece is still moving. When the piece
+ * locks where it was meant to, the next plan is usually ready at once.
+ * 
+ * If a plan still isn't ready when its deadline passes, fallback() picks a move on the
+ * calling thread with a second AI that only looks at the current and stored pieces. That
+ * takes well under a millisecond, so the game never stalls on a search.
+ * 
+ * Everything except the planning itself runs on the thread that plays the game.
+ * 
+ * @author dmayans
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class Planner {
+	
+	private final ExecutorService _executor;
+	private final AI _ai; // Only used on the planner thread
+	private final AI _fallback; // Only used on the game thread
+	private final Ghost _ghost;
+	private final AtomicReference<Plan> _ready; // Handoff from the planner thread
+	private volatile GameState _latest; // Newest position requested
+	
+	public Planner() {
+		_executor = Executors.newSingleThreadExecutor(new PlannerThread());
+		_ai = new AI();
+		_fallback = new AI();
+		_fallback.setLookahead(1, 1, 0);
+		_fallback.setCache(0);
+		_ghost = new Ghost();
+		_ready = new AtomicReference<Plan>();
+	}
+	
+	// Starts planning for game in the background, unless that is already under way
+	public void request(GameState game) {
+		GameState latest = _latest;
+		if(latest!=null && latest.matches(game)) {return;}
+		_latest = game;
+		_executor.execute(new Job(game));
+	}
+	
+	// Returns the finished plan for game, or null if it isn't ready
+	public Plan take(GameState game) {
+		Plan plan = _ready.get();
+		if(plan==null || !plan.getGame().matches(game)) {return null;}
+		_ready.compareAndSet(plan, null);
+		return plan;
+	}
+	
+	// Plans for game right away on the calling thread, looking at no preview pieces
+	public Plan fallback(GameState game) {
+		_fallback.newMove(game);
+		return new Plan(game, _fallback);
+	}
+	
+	// The position plan leads to from game, if the piece locks where the plan says. game
+	// should know two more upcoming pieces than the plan was made with, since locking and
+	// swapping into an empty store each use one up. Returns null if the position can't be
+	// known or the game would be over.
+	public GameState predict(GameState game, Plan plan) {
+		GameState next = plan.isSwap() ? game.hold() : game;
+		if(next.getCurrent()==-1) {return null;}
+		_ghost.place(next.getCurrent(), plan.getPosition());
+		next = next.apply(_ghost.getPlacement());
+		if(next.isOver() || next.getCurrent()==-1) {return null;}
+		return next;
+	}
+	
+	// A search for one position, skipped if a newer request came in while it waited
+	private class Job implements Runnable {
+		private GameState _game;
+		
+		public Job(GameState game) {
+			_game = game;
+		}
+		
+		@Override
+		public void run() {
+			if(_latest!=_game) {return;}
+			_ai.newMove(_game);
+			_ready.set(new Plan(_game, _ai));
+		}
+	}
+	
+	// Runs the planner on a daemon thread, so it never keeps the game from exiting
+	private static class PlannerThread implements ThreadFactory {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "tetris-planner");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+	
+	/**
+	 * The move an AI picked for one position: the commands that play it, whether it starts
+	 * with a swap and where it locks. Everything but the command cursor is fixed when the
+	 * plan is made, so a plan can be passed between threads through the handoff.
+	 */
+	public static class Plan {
+		private final GameState _game;
+		private final int[] _commands;
+		private final boolean _swap;
+		private final int _position;
+		private int _next; // Game thread only
+		
+		private Plan(GameState game, AI ai) {
+			_game = game;
+			_swap = ai.isSwap();
+			_position = ai.getPosition();
+			int length = 0;
+			int[] commands = new int[32];
+			for(Integer x=ai.poll(); x!=null; x=ai.poll()) {
+				if(length==commands.length) {commands = Arrays.copyOf(commands, 2*length);}
+				commands[length++] = x;
+			}
+			_commands = Arrays.copyOf(commands, length);
+		}
+		
+		// Accessors
+		public GameState getGame() {
+			return _game;
+		}
+		
+		public boolean isSwap() {
+			return _swap;
+		}
+		
+		public int getPosition() {
+			return _position;
+		}
+		
+		// The next command of the plan without using it up, null if there is none
+		public Integer peek() {
+			if(_next==_commands.length) {return null;}
+			return _commands[_next];
+		}
+		
+		// The next command of the plan, null once it has run out and the piece should drop
+		public Integer poll() {
+			if(_next==_commands.length) {return null;}
+			return _commands[_next++];
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package tetris;
+
+/**
+ * Records a game as the seed it was dealt from plus every input that moved the falling
+ * piece, so that Replay can play it again exactly. Inputs are the indices into
+ * Constants.MOTION and -1 for a swap, the same commands the AI polls out. A lock is logged
+ * with the position the piece locked at, so a replay can check it lands in the same place.
+ * The game loop records a hard drop as the down inputs it is made of, one per row, so a
+ * replay shows the piece falling. A headless Game has no falling piece and records only
+ * the AI's commands: its lock events drop the piece the rest of the way themselves.
+ * With -Dtetris.replay.dir=DIR the game, the Simulator and the GameFarm record every game
+ * to DIR/<seed>.replay (see open).
+ * 
+ * The file starts with the magic bytes "TRPL", a version byte and the seed as eight bytes.
+ * Every event after that is one varint holding the event code in its low three bits and
+ * the milliseconds since the previous event above them, so an input made within 15ms of
+ * the last takes a single byte. Lock events are followed by the zigzag varint of the lock
+ * position (a MoveGenerator index) minus the previous one, and the end event by the lines
+ * and pieces of the whole game.
+ * 
+ * Events are encoded into a buffer in memory, and full buffers are written by an
+ * asynchronous file channel, so the game never waits on the disk. Buffers come back to a
+ * free list once written, so a recorder stops allocating once it has a few. close() only
+ * hands the last buffer over, and whichever of it and the last write finishes later
+ * closes the file, so closing never waits on the disk either. Callers that need the file
+ * complete, such as a headless run about to exit, wait for it with await(). Recorders are
+ * not thread safe.
+ * 
+ * @author dmayans
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Recorder {
+	
+	public static final int VERSION = 1;
+	
+	// Event codes. Codes below SWAP are indices into Constants.MOTION.
+	public static final int SWAP = 5;
+	public static final int LOCK = 6;
+	public static final int END = 7;
+	
+	private static final int BUFFER = 8192;
+	
+	private final String _path;
+	private final AsynchronousFileChannel _channel;
+	private final ConcurrentLinkedQueue<ByteBuffer> _free; // Buffers done writing
+	private final AtomicInteger _pending; // Writes in flight, plus one until close()
+	private final CountDownLatch _closed; // Released once the file is closed
+	private volatile Throwable _failure;
+	private ByteBuffer _buffer;
+	private long _position; // Where the next full buffer goes in the file
+	private long _time; // Time of the previous event
+	private int _lock; // Position of the previous lock
+	private int _lines;
+	private int _pieces;
+	
+	public Recorder(String path, long seed) {
+		_path = path;
+		try {
+			_channel = AsynchronousFileChannel.open(new File(path).toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch(IOException e) {
+			throw new UncheckedIOException("Can't record to "+path, e);
+		}
+		_free = new ConcurrentLinkedQueue<ByteBuffer>();
+		_pending = new AtomicInteger(1);
+		_closed = new CountDownLatch(1);
+		_buffer = ByteBuffer.allocate(BUFFER);
+		_buffer.put((byte) 'T').put((byte) 'R').put((byte) 'P').put((byte) 'L').put((byte) VERSION);
+		_buffer.putLong(seed);
+		_time = System.currentTimeMillis();
+	}
+	
+	// Records a game dealt from seed into the directory named by the tetris.replay.dir
+	// property, creating the directory if need be. Returns null when the property isn't set.
+	public static Recorder open(long seed) {
+		String dir = System.getProperty("tetris.replay.dir");
+		if(dir==null) {return null;}
+		File directory = new File(dir);
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new UncheckedIOException(new IOException("Can't create replay directory "+directory.getAbsolutePath()));
+		}
+		return new Recorder(new File(directory, seed+".replay").getPath(), seed);
+	}
+	
+	// Accessors
+	public int getLines() {
+		return _lines;
+	}
+	
+	public int getPieces() {
+		return _pieces;
+	}
+	
+	// Records an input: an index into Constants.MOTION or -1 for a swap
+	public void input(int command) {
+		this.event(command==-1 ? SWAP : command);
+	}
+	
+	// Records the falling piece dropping and locking at the given MoveGenerator position,
+	// clearing some rows
+	public void lock(int position, int cleared) {
+		this.event(LOCK);
+		this.varint(zigzag(position-_lock));
+		_lock = position;
+		_lines += cleared;
+		_pieces++;
+	}
+	
+	// Ends the game. Returns at once, and the file is closed once the last write finishes.
+	public void close() {
+		this.event(END);
+		this.varint(_lines);
+		this.varint(_pieces);
+		this.flush();
+		this.done();
+	}
+	
+	// Waits until a closed recording is all on disk
+	public void await() {
+		try {
+			_closed.await();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if(_failure!=null) {throw new UncheckedIOException("Can't write "+_path, new IOException(_failure));}
+	}
+	
+	private void event(int code) {
+		long now = System.currentTimeMillis();
+		this.varint((now-_time)<<3 | code);
+		_time = now;
+	}
+	
+	private void varint(long value) {
+		if(_buffer.remaining()<10) {this.flush();}
+		while((value & ~0x7FL)!=0) {
+			_buffer.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		_buffer.put((byte) value);
+	}
+	
+	static long zigzag(int value) {
+		return (value<<1 ^ value>>31) & 0xFFFFFFFFL;
+	}
+	
+	// Hands the buffer to the channel and carries on in a free one
+	private void flush() {
+		_buffer.flip();
+		Write write = new Write(_buffer, _position);
+		_position += _buffer.remaining();
+		_pending.incrementAndGet();
+		write.start();
+		_buffer = _free.poll();
+		if(_buffer==null) {_buffer = ByteBuffer.allocate(BUFFER);}
+	}
+	
+	// Called by close() and by every write as it finishes. The last one closes the file, on
+	// whichever thread that is. Nobody may be waiting on a failure, so it is also printed.
+	private void done() {
+		if(_pending.decrementAndGet()!=0) {return;}
+		try {
+			_channel.close();
+		} catch(IOException e) {
+			if(_failure==null) {_failure = e;}
+		}
+		if(_failure!=null) {System.err.println("Can't write "+_path+": "+_failure);}
+		_closed.countDown();
+	}
+	
+	// One buffer on its way to the file. Picks up where it left off if the channel writes
+	// only part of it.
+	private class Write implements CompletionHandler<Integer, Void> {
+		private ByteBuffer _data;
+		private long _offset;
+		
+		public Write(ByteBuffer data, long offset) {
+			_data = data;
+			_offset = offset;
+		}
+		
+		public void start() {
+			_channel.write(_data, _offset, null, this);
+		}
+		
+		@Override
+		public void completed(Integer written, Void attachment) {
+			_offset += written;
+			if(_data.hasRemaining()) {
+				this.start();
+				return;
+			}
+			_data.clear();
+			_free.offer(_data);
+			done();
+		}
+		
+		@Override
+		public void failed(Throwable e, Void attachment) {
+			_failure = e;
+			done();
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package tetris;
+
+/**
+ * Plays back a game written by a Recorder. The pieces are dealt again from the recorded
+ * seed and every input goes through the same Board and Tetromino code as the Swing game, so
+ * a replay checks the game is deterministic: each piece has to lock where the recording
+ * says it did, and the lines and pieces have to add up to the recorded totals. The first
+ * mismatch is kept and the replay carries on with the recorded inputs.
+ * 
+ * Replays can also re-ask the AI at every piece and report the first one where it now
+ * picks a different move than the recording, which is how a regression in a headless run
+ * is tracked down. The AI has to be set up with the same tetris.ai.* properties as the run
+ * that was recorded. Recordings of games played in the window include gravity and the
+ * player's own inputs, so only headless recordings can be expected to match all the way.
+ * 
+ * Usage: java tetris.Replay [verify|ai|view] [replay files...]
+ *   verify replays each file headlessly as fast as possible, ai also checks the AI's moves,
+ *   and view opens the first file in a window: right arrow steps one input, down arrow
+ *   steps to the next lock and space plays or pauses.
+ * 
+ * @author dmayans
+ */
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import javax.swing.*;
+
+public class Replay {
+	
+	private ByteBuffer _data;
+	private long _seed;
+	private long _time; // Milliseconds into the game
+	private int _lock; // Position of the previous lock
+	private boolean _ended;
+	
+	private Board _board;
+	private UpcomingPieces _upcoming;
+	private Tetromino _tetromino;
+	private int _stored;
+	private boolean _swapped; // Whether the current piece came in by a swap
+	private int _lines;
+	private int _pieces;
+	private boolean _over;
+	
+	private AI _ai; // null = don't check the AI
+	private String _error; // First mismatch, null if none
+	private String _divergence; // First move the AI no longer picks, null if none
+	
+	public Replay(String path) throws IOException {
+		_data = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path)));
+		if(_data.remaining()<13 || _data.get()!='T' || _data.get()!='R' || _data.get()!='P' || _data.get()!='L') {
+			throw new IOException(path+" is not a replay");
+		}
+		int version = _data.get();
+		if(version!=Recorder.VERSION) {throw new IOException(path+" is replay version "+version);}
+		_seed = _data.getLong();
+		_board = new Board();
+		_upcoming = new UpcomingPieces(_seed);
+		_tetromino = new Tetromino(_board, _upcoming.push());
+		_stored = -1;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		String mode = args.length>0 ? args[0] : "verify";
+		if(mode.equals("view")) {
+			View view = new View(new Replay(args[1]));
+			JFrame frame = new JFrame("Replay of seed "+view._replay._seed);
+			frame.add(view);
+			frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+			frame.pack();
+			frame.setResizable(false);
+			frame.setVisible(true);
+			return;
+		}
+		boolean ok = true;
+		for(int i=1; i<args.length; i++) {
+			Replay replay = new Replay(args[i]);
+			if(mode.equals("ai")) {replay.checkAI(new AI(replay._board, replay._upcoming));}
+			long start = System.nanoTime();
+			while(replay.step()) {}
+			double seconds = (System.nanoTime()-start)/1e9;
+			System.out.printf("%s: seed %d, %d pieces, %d lines, replayed in %.3fs (%.0f pieces/s)%n", args[i],
+					replay._seed, replay._pieces, replay._lines, seconds, replay._pieces/seconds);
+			if(!replay._ended) {System.out.println("  recording stops before the end of the game");}
+			if(replay._error!=null) {System.out.println("  MISMATCH: "+replay._error);}
+			if(replay._divergence!=null) {System.out.println("  AI DIVERGES: "+replay._divergence);}
+			ok &= replay._error==null && replay._divergence==null;
+		}
+		if(!ok) {System.exit(1);}
+	}
+	
+	// Accessors
+	public long getSeed() {
+		return _seed;
+	}
+	
+	public int getLines() {
+		return _lines;
+	}
+	
+	public int getPieces() {
+		return _pieces;
+	}
+	
+	public String getError() {
+		return _error;
+	}
+	
+	public String getDivergence() {
+		return _divergence;
+	}
+	
+	// Compares the recorded moves with the ones the given AI picks, from the current piece
+	// on. The AI has to be built on this replay's board and upcoming pieces.
+	public void checkAI(AI ai) {
+		_ai = ai;
+		this.plan();
+	}
+	
+	// Plays the next recorded event. Returns false once there are none left.
+	public boolean step() {
+		if(_ended || !_data.hasRemaining()) {return false;}
+		long event = this.varint();
+		_time += event>>>3;
+		int code = (int) (event & 7);
+		if(code<Recorder.SWAP) {
+			_tetromino.move(Constants.MOTION[code]);
+		} else if(code==Recorder.SWAP) {
+			this.swap();
+		} else if(code==Recorder.LOCK) {
+			_lock += unzigzag(this.varint());
+			this.lock(_lock);
+		} else {
+			_ended = true;
+			int lines = (int) this.varint();
+			int pieces = (int) this.varint();
+			if(lines!=_lines || pieces!=_pieces) {
+				this.mismatch("recorded "+lines+" lines in "+pieces+" pieces, replayed "+_lines+" in "+_pieces);
+			}
+		}
+		return true;
+	}
+	
+	// Plays up to and including the next lock. Returns false once there are no events left.
+	public boolean stepPiece() {
+		int pieces = _pieces;
+		while(_pieces==pieces && this.step()) {}
+		return _pieces!=pieces;
+	}
+	
+	// Same as swapping in the Swing game
+	private void swap() {
+		_tetromino.hide();
+		int type = _tetromino.getType();
+		if(_stored==-1) {
+			_tetromino = new Tetromino(_board, _upcoming.push());
+		} else {
+			_tetromino = new Tetromino(_board, _stored);
+		}
+		_stored = type;
+		_swapped = true;
+	}
+	
+	// Drops and locks the falling piece, which the recording says locked at position
+	private void lock(int position) {
+		while(_tetromino.move(Constants.DOWN)) {}
+		if(_tetromino.getPosition()!=position) {
+			this.mismatch("piece "+_pieces+" locked at "+describe(_tetromino.getPosition())+", recorded at "+describe(position));
+		}
+		if(_ai!=null && _divergence==null && (_ai.isSwap()!=_swapped || _ai.getPosition()!=position)) {
+			_divergence = "piece "+_pieces+" recorded "+(_swapped ? "swap, " : "")+describe(position)+", AI now picks "
+					+(_ai.isSwap() ? "swap, " : "")+describe(_ai.getPosition());
+		}
+		int min = _tetromino.min();
+		_tetromino.lock();
+		_lines += _board.clearRow(min);
+		_pieces++;
+		if(_board.isOver()) {
+			_over = true;
+		} else {
+			_tetromino = new Tetromino(_board, _upcoming.push());
+			_swapped = false;
+			this.plan();
+		}
+	}
+	
+	// Asks the AI for its move with the piece that has just come in
+	private void plan() {
+		if(_ai!=null && _divergence==null) {_ai.newMove(_tetromino, _stored);}
+	}
+	
+	private void mismatch(String error) {
+		if(_error==null) {_error = error;}
+	}
+	
+	private static String describe(int position) {
+		return "rotation "+MoveGenerator.rotation(position)+" x "+MoveGenerator.x(position)+" y "+MoveGenerator.y(position);
+	}
+	
+	private long varint() {
+		long value = 0;
+		for(int shift=0; ; shift+=7) {
+			byte b = _data.get();
+			value |= (long) (b & 0x7F) << shift;
+			if(b>=0) {return value;}
+		}
+	}
+	
+	static int unzigzag(long value) {
+		return (int) (value>>>1) ^ -(int) (value & 1);
+	}
+	
+	// Window that steps through a replay
+	@SuppressWarnings("serial")
+	private static class View extends JPanel {
+		
+		private Replay _replay;
+		private Timer _t;
+		
+		public View(Replay replay) {
+			super();
+			this.setPreferredSize(new Dimension(301,631));
+			this.setFocusable(true);
+			_replay = replay;
+			_t = new Timer(40, new PlayListener());
+			this.addKeyListener(new KeyboardListener());
+		}
+		
+		@Override
+		public void paint(Graphics g) {
+			super.paint(g);
+			_replay._board.paint(g);
+			g.setColor(Color.BLACK);
+			String status = "piece "+_replay._pieces+"  lines "+_replay._lines+"  "+_replay._time/1000.0+"s";
+			if(_replay._error!=null) {
+				status += "  MISMATCH";
+			} else if(_replay._ended || _replay._over) {
+				status += "  end";
+			}
+			g.drawString(status, 5, 620);
+		}
+		
+		// Plays one input each tick
+		private class PlayListener implements ActionListener {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if(!_replay.step()) {_t.stop();}
+				repaint();
+			}
+		}
+		
+		private class KeyboardListener implements KeyListener {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				if(e.getKeyCode()==KeyEvent.VK_RIGHT) {
+					_replay.step();
+				} else if(e.getKeyCode()==KeyEvent.VK_DOWN) {
+					_replay.stepPiece();
+				} else if(e.getKeyCode()==KeyEvent.VK_SPACE) {
+					if(_t.isRunning()) {
+						_t.stop();
+					} else {
+						_t.start();
+					}
+				}
+				repaint();
+			}
+			
+			@Override
+			public void keyReleased(KeyEvent e) {}
+			
+			@Override
+			public void keyTyped(KeyEvent e) {}
+		}
+	}
+}
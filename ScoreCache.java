@@ -0,0 +1,114 @@
+package tetris;
+
+/**
+ * Bounded cache of board scores keyed by Zobrist hash, so the AI never scores the same
+ * position twice while it still remembers it. Entries live in buckets of four slots
+ * picked by the hash. When a bucket is full, a clock hand sweeps it: recently used
+ * entries get a second chance, and the first entry that hasn't been used since the last
+ * sweep is evicted.
+ * 
+ * The cache is not thread safe. Each AI owns one and only uses it from its own thread.
+ * 
+ * @author dmayans
+ */
+
+public class ScoreCache {
+	
+	public static final int MISS = Integer.MIN_VALUE; // Returned by get when the key is absent
+	private static final int WAYS = 4; // Slots per bucket
+	private static final int ENTRY = 8+4+1; // Bytes per slot: key, score, reference bit
+	
+	private long[] _keys; // 0 = empty slot
+	private int[] _scores;
+	private boolean[] _used;
+	private byte[] _hands; // Clock hand of each bucket
+	private int _mask;
+	
+	private long _hits;
+	private long _misses;
+	private long _evictions;
+	
+	// Sizes the cache to at most the given number of bytes
+	public ScoreCache(long bytes) {
+		int buckets = Integer.highestOneBit((int) Math.max(1, Math.min(1<<26, bytes/(ENTRY*WAYS+1))));
+		_keys = new long[buckets*WAYS];
+		_scores = new int[buckets*WAYS];
+		_used = new boolean[buckets*WAYS];
+		_hands = new byte[buckets];
+		_mask = buckets-1;
+	}
+	
+	// Accessors
+	public int get(long key) {
+		if(key==0) {key = 1;} // 0 marks an empty slot
+		int bucket = this.bucket(key);
+		for(int i=bucket*WAYS; i<bucket*WAYS+WAYS; i++) {
+			if(_keys[i]==key) {
+				_used[i] = true;
+				_hits++;
+				return _scores[i];
+			}
+		}
+		_misses++;
+		return MISS;
+	}
+	
+	public int capacity() {
+		return _keys.length;
+	}
+	
+	public long getHits() {
+		return _hits;
+	}
+	
+	public long getMisses() {
+		return _misses;
+	}
+	
+	public long getEvictions() {
+		return _evictions;
+	}
+	
+	// Mutators
+	public void put(long key, int score) {
+		if(key==0) {key = 1;}
+		int bucket = this.bucket(key);
+		int base = bucket*WAYS;
+		for(int i=base; i<base+WAYS; i++) {
+			if(_keys[i]==0 || _keys[i]==key) {
+				_keys[i] = key;
+				_scores[i] = score;
+				_used[i] = false;
+				return;
+			}
+		}
+		// Bucket is full: sweep until an entry without a second chance turns up
+		int hand = _hands[bucket];
+		while(_used[base+hand]) {
+			_used[base+hand] = false;
+			hand = (hand+1)%WAYS;
+		}
+		_keys[base+hand] = key;
+		_scores[base+hand] = score;
+		_hands[bucket] = (byte) ((hand+1)%WAYS);
+		_evictions++;
+	}
+	
+	public void clear() {
+		for(int i=0; i<_keys.length; i++) {
+			_keys[i] = 0;
+			_used[i] = false;
+		}
+		_hits = 0;
+		_misses = 0;
+		_evictions = 0;
+	}
+	
+	// Spreads the hash bits before picking a bucket
+	private int bucket(long key) {
+		key ^= key>>>33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key>>>33;
+		return (int) key & _mask;
+	}
+}
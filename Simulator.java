@@ -0,0 +1,96 @@
+package tetris;
+
+/**
+ * Command line runner that plays games headlessly with the AI and prints aggregate
+ * statistics: lines and pieces per game, the distribution of game lengths, and overall
+ * speed. Needs no display, so it can run on a server. The AI is configured with the usual
+ * tetris.ai.* system properties. Games are dealt from a seeded generator, so a run can be
+ * repeated exactly, and the seed of the shortest game is printed so it can be replayed.
+ * With -Dtetris.replay.dir=DIR every game is also recorded there for tetris.Replay.
+ * 
+ * Usage: java tetris.Simulator [games] [max pieces per game] [seed]
+ * 
+ * @author dmayans
+ */
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class Simulator {
+	
+	public static void main(String[] args) {
+		int games = args.length>0 ? Integer.parseInt(args[0]) : 100;
+		int max = args.length>1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+		SplittableRandom source = args.length>2 ? new SplittableRandom(Long.parseLong(args[2])) : new SplittableRandom();
+		
+		AI ai = new AI();
+		int shortest = 0;
+		int[] lines = new int[games];
+		int[] pieces = new int[games];
+		long[] seeds = new long[games];
+		long start = System.nanoTime();
+		for(int i=0; i<games; i++) {
+			UpcomingPieces upcoming = new UpcomingPieces(source.split());
+			Game game = new Game(ai, upcoming);
+			Recorder recorder = Recorder.open(upcoming.getSeed());
+			game.setRecorder(recorder);
+			game.play(max);
+			if(recorder!=null) {
+				recorder.close();
+				recorder.await(); // The JVM may exit as soon as the games are done
+			}
+			lines[i] = game.getLines();
+			pieces[i] = game.getPieces();
+			seeds[i] = upcoming.getSeed();
+			if(pieces[i]<pieces[shortest]) {shortest = i;}
+		}
+		double seconds = (System.nanoTime()-start)/1e9;
+		
+		long totalLines = 0;
+		long totalPieces = 0;
+		for(int i=0; i<games; i++) {
+			totalLines += lines[i];
+			totalPieces += pieces[i];
+		}
+		System.out.printf("games %d, pieces %d, lines %d in %.1fs (%.1f games/s, %.0f pieces/s)%n",
+				games, totalPieces, totalLines, seconds, games/seconds, totalPieces/seconds);
+		summarize("lines per game", lines);
+		summarize("pieces per game", pieces);
+		histogram(pieces);
+		System.out.println("shortest game: seed " + seeds[shortest]);
+	}
+	
+	// Prints the mean and percentiles of values
+	public static void summarize(String name, int[] values) {
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+		double mean = 0;
+		for(int value : sorted) {
+			mean += value/(double) sorted.length;
+		}
+		System.out.printf("%-16s mean %.1f  min %d  p10 %d  p50 %d  p90 %d  max %d%n", name, mean,
+				sorted[0], percentile(sorted, 10), percentile(sorted, 50), percentile(sorted, 90),
+				sorted[sorted.length-1]);
+	}
+	
+	public static int percentile(int[] sorted, int p) {
+		return sorted[Math.min(sorted.length-1, (int) ((long) sorted.length*p/100))];
+	}
+	
+	// Prints how many games ended in each of ten equal ranges of length
+	private static void histogram(int[] pieces) {
+		int max = 1;
+		for(int value : pieces) {
+			max = Math.max(max, value);
+		}
+		int width = max/10+1;
+		int[] counts = new int[10];
+		for(int value : pieces) {
+			counts[Math.min(9, value/width)]++;
+		}
+		System.out.println("game length (pieces):");
+		for(int i=0; i<10; i++) {
+			System.out.printf("  %6d-%-6d %5d%n", i*width, (i+1)*width-1, counts[i]);
+		}
+	}
+}
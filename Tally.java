@@ -0,0 +1,77 @@
+package tetris;
+
+/**
+ * Lock-free collector for the results of many games finishing on many threads at once.
+ * Totals are LongAdders and lines per game go into a histogram of atomic counters, so
+ * recording a game never blocks and percentiles can be read while games are still running.
+ * 
+ * @author dmayans
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Tally {
+	
+	private static final int BUCKETS = 1<<16; // Exact counts up to 65535 lines per game
+	
+	private LongAdder _games;
+	private LongAdder _lines;
+	private LongAdder _pieces;
+	private AtomicLongArray _histogram; // Games by lines cleared
+	private long _start;
+	
+	public Tally() {
+		_games = new LongAdder();
+		_lines = new LongAdder();
+		_pieces = new LongAdder();
+		_histogram = new AtomicLongArray(BUCKETS);
+		_start = System.nanoTime();
+	}
+	
+	// Called by a worker whenever it finishes a game
+	public void record(int lines, int pieces) {
+		_games.increment();
+		_lines.add(lines);
+		_pieces.add(pieces);
+		_histogram.incrementAndGet(Math.min(BUCKETS-1, lines));
+	}
+	
+	// Accessors
+	public long getGames() {
+		return _games.sum();
+	}
+	
+	public long getLines() {
+		return _lines.sum();
+	}
+	
+	public long getPieces() {
+		return _pieces.sum();
+	}
+	
+	public double getGamesPerSecond() {
+		return this.getGames()/((System.nanoTime()-_start)/1e9);
+	}
+	
+	// Lines cleared by the game at percentile p (0-100) of the games recorded so far
+	public int percentile(double p) {
+		long games = this.getGames();
+		long rank = Math.min(games-1, (long) (games*p/100));
+		long seen = 0;
+		for(int i=0; i<BUCKETS; i++) {
+			seen += _histogram.get(i);
+			if(seen>rank) {return i;}
+		}
+		return BUCKETS-1;
+	}
+	
+	@Override
+	public String toString() {
+		long games = Math.max(1, this.getGames());
+		return String.format("games %d (%.1f/s), lines/game mean %.1f p10 %d p50 %d p90 %d p99 %d, pieces/game %.1f",
+				this.getGames(), this.getGamesPerSecond(), (double) this.getLines()/games,
+				this.percentile(10), this.percentile(50), this.percentile(90), this.percentile(99),
+				(double) this.getPieces()/games);
+	}
+}
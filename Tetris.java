@@ -2,15 +2,24 @@ package tetris;
 
 /**
  * Generates an invisible shell around the board to run the game of tetris. Handles
- * keypresses and appropriate board responses. Generates tetrominos, etc.
+ * keypresses and paints the board.
+ * 
+ * The game itself runs on a GameLoop thread. Keypresses and the shell's buttons are posted
+ * to the loop as commands, the board is painted from the loop's latest frame, and whatever
+ * the loop reports is passed on to the shell on the event dispatch thread.
+ * 
+ * The board is kept painted in an image of its own. Each frame only asks Swing to repaint
+ * the area that changed, and painting first brings the image up to date by redrawing the
+ * cells that differ from the last frame painted into it, then copies the changed area to
+ * the screen. Moving a piece redraws a handful of cells instead of all 200.
  * 
  * @author dmayans
  */
 
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 
@@ -19,143 +28,140 @@ import javax.swing.*;
 @SuppressWarnings("serial")
 public class Tetris extends JPanel {
 	
-	private UpcomingPieces _upcoming;
 	private TetrisShell _shell;
-	private Board _board;
-	private Tetromino _tetromino;
-	private AI _AI;
-	
-	private boolean _paused;
-	private boolean _over;
-	private boolean _ai;
-	
-	private Timer _t;
-	private Timer _a;
+	private GameLoop _loop;
+	private BufferedImage _buffer; // The board as of the _painted frame
+	private GameLoop.Frame _painted;
 	
 	public Tetris(UpcomingPieces upcoming, TetrisShell shell) {
 		super();
 		this.setPreferredSize(new Dimension(301,601));
 		this.setFocusable(true);
 		
-		_upcoming = upcoming;
 		_shell = shell;
 		_shell.setTetris(this); // Mutual association necessary for proper pause functionality
-		_board = new Board();
-		_tetromino = new Tetromino(_board, _upcoming.push());
-		_AI = new AI(_board);
-		
-		_paused = false;
-		_over = false;
-		_ai = false;
-		
-		_t = new Timer(800, new TimerListener());
-		_t.start();
-		_a = new Timer(40, new AIListener());
+		_loop = new GameLoop(upcoming, new ShellListener());
 		
 		this.addKeyListener(new KeyboardListener());
 	}
 	
-	// Mutators
-	public void swapPiece(int type) {
-		// Hides and overwrites old piece
-		_tetromino.hide();
-		if(_shell.isEmpty()) {
-			_shell.swapPiece(_tetromino.getType());
-			_tetromino = new Tetromino(_board, _upcoming.push());
-			_shell.updateScore(0);
-		} else {
-			_tetromino = new Tetromino(_board, _shell.swapPiece(type));
-		}
+	// Starts the game once the shell is built
+	public void start() {
+		_loop.start();
 	}
 	
+	// Mutators
 	public void pause(boolean b) {
 		// Called by the shell to pass relevant pause information
-		_paused = b && !_over;
+		_loop.post(b ? GameLoop.PAUSE : GameLoop.RESUME);
 		this.grabFocus(); // take focus back from the pause button
 	}
 	
 	public void ai(boolean b) {
 		// Called by the shell to pass relevant ai information
-		_ai = b;
-		if(_ai) {
-			_a.start();
-			_AI.newMove(_tetromino, _shell.peekSwap());
-		} else {
-			_a.stop();
-		}
+		_loop.post(b ? GameLoop.AI_ON : GameLoop.AI_OFF);
 		this.grabFocus(); // take focus back from the ai button
 	}
 	
-	// Used to adjust the droprate after lines have been cleared
-	public void dropRate(int rate) {
-		_t.stop();
-		_t = new Timer(rate, new TimerListener());
-		_t.start();
-		_a.stop();
-		_a = new Timer(rate/20, new AIListener());
-		if(_ai) {_a.start();}
-	}
-	
-	// Called each time a tetromino locks. Clears rows, checks for game over, etc.
-	public void checkEnd(int min) {
-		int x = _board.clearRow(min);
-		if(_board.isOver()) {
-			_paused = true;
-			_over = true;
-			_shell.end();
-		} else {
-			// If the game doesn't end, generate a new tetromino
-			_tetromino = new Tetromino(_board, _upcoming.push());
-		}
-		_shell.updateScore(x); // Also updates upcoming pieces
-	}
-	
 	// Restarts the game
 	public void restart() {
 		this.grabFocus();
-		_upcoming.shuffle();
-		_board.clear();
-		_shell.clearScore();
-		_paused = false;
-		_over = false;
-		_tetromino = new Tetromino(_board, _upcoming.push());
-		_AI.newMove(_tetromino, -1);
+		_loop.post(GameLoop.RESTART);
+	}
+	
+	// Stops the game, writing out the recording of the current one if there is one
+	public void stop() {
+		_loop.stop();
 	}
 	
+	// The image covers the whole panel, so nothing else needs painting
 	@Override
 	public void paint(Graphics g) {
-		super.paint(g);
-		_board.paint(g);
+		GameLoop.Frame frame = _loop.getFrame();
+		if(_buffer==null) {_buffer = new BufferedImage(301, 601, BufferedImage.TYPE_INT_RGB);}
+		if(frame!=_painted) {
+			Graphics buffer = _buffer.getGraphics();
+			frame.paint(buffer, _painted);
+			buffer.dispose();
+			_painted = frame;
+		}
+		g.drawImage(_buffer, 0, 0, null);
 	}
 	
-	// TimerListener used to force the tetromino down
-	private class TimerListener implements ActionListener {
+	// Passes what the loop reports on to the shell, on the event dispatch thread
+	private class ShellListener implements GameLoop.Listener {
 		@Override
-		public void actionPerformed(ActionEvent e) {
-			if(!_paused && !_tetromino.move(Constants.DOWN)) {
-				checkEnd(_tetromino.min());
-			}
-			repaint();
+		public void changed(GameLoop.Frame frame) {
+			Rectangle dirty = frame.getDirty();
+			if(dirty!=null) {repaint(dirty);}
+		}
+		
+		@Override
+		public void scored(int lines, int[] upcoming) {
+			SwingUtilities.invokeLater(new Scored(lines, upcoming));
+		}
+		
+		@Override
+		public void stored(int type) {
+			SwingUtilities.invokeLater(new Stored(type));
+		}
+		
+		@Override
+		public void paused(boolean paused) {
+			SwingUtilities.invokeLater(new Paused(paused));
+		}
+		
+		@Override
+		public void over() {
+			SwingUtilities.invokeLater(new Over());
 		}
 	}
 	
-	// AIListener used to move the tetromino
-	private class AIListener implements ActionListener {
+	private class Scored implements Runnable {
+		private int _lines;
+		private int[] _upcoming;
+		
+		public Scored(int lines, int[] upcoming) {
+			_lines = lines;
+			_upcoming = upcoming;
+		}
+		
 		@Override
-		public void actionPerformed(ActionEvent e) {
-			if(_ai && !_paused) {
-				Integer x = _AI.poll();
-				if(x==null) {
-					while(_tetromino.move(Constants.DOWN));
-					checkEnd(_tetromino.min());
-					_AI.newMove(_tetromino, _shell.peekSwap());
-				} else if(x.equals(-1)) {
-					swapPiece(_tetromino.getType());
-				} else {
-					_tetromino.move(Constants.MOTION[x]);
-				}
-				repaint();
-			}
+		public void run() {
+			_shell.updateScore(_lines, _upcoming);
+		}
+	}
+	
+	private class Stored implements Runnable {
+		private int _type;
+		
+		public Stored(int type) {
+			_type = type;
+		}
+		
+		@Override
+		public void run() {
+			_shell.showStored(_type);
+		}
+	}
+	
+	private class Paused implements Runnable {
+		private boolean _paused;
+		
+		public Paused(boolean paused) {
+			_paused = paused;
+		}
+		
+		@Override
+		public void run() {
+			_shell.pause(_paused);
+		}
+	}
+	
+	private class Over implements Runnable {
+		@Override
+		public void run() {
+			_shell.end();
 		}
 	}
 	
@@ -163,30 +169,21 @@ public class Tetris extends JPanel {
 	private class KeyboardListener implements KeyListener {
 		@Override
 		public void keyPressed(KeyEvent e) {
-			if(e.getKeyCode()==KeyEvent.VK_LEFT && !_paused) {
-				_tetromino.move(Constants.LEFT);
-				repaint();
-			} else if(e.getKeyCode()==KeyEvent.VK_RIGHT && !_paused) {
-				_tetromino.move(Constants.RIGHT);
-				repaint();
-			} else if(e.getKeyCode()==KeyEvent.VK_UP && !_paused) {
-				_tetromino.move(Constants.ROTATE);
-				repaint();
-			} else if(e.getKeyCode()==KeyEvent.VK_DOWN && !_paused) {
-				if(!_tetromino.move(Constants.DOWN)) {
-					checkEnd(_tetromino.min());
-				}
-				repaint();
-			} else if(e.getKeyCode()==KeyEvent.VK_SPACE && !_paused) {
-				while(_tetromino.move(Constants.DOWN)) {}
-				checkEnd(_tetromino.min());
-				repaint();
-			} else if(e.getKeyCode()==KeyEvent.VK_C && !_paused) {
+			if(e.getKeyCode()==KeyEvent.VK_LEFT) {
+				_loop.post(GameLoop.LEFT);
+			} else if(e.getKeyCode()==KeyEvent.VK_RIGHT) {
+				_loop.post(GameLoop.RIGHT);
+			} else if(e.getKeyCode()==KeyEvent.VK_UP) {
+				_loop.post(GameLoop.ROTATE);
+			} else if(e.getKeyCode()==KeyEvent.VK_DOWN) {
+				_loop.post(GameLoop.DOWN);
+			} else if(e.getKeyCode()==KeyEvent.VK_SPACE) {
+				_loop.post(GameLoop.DROP);
+			} else if(e.getKeyCode()==KeyEvent.VK_C) {
 				// c used to swap stored piece
-				swapPiece(_tetromino.getType());
-			} else if(e.getKeyCode()==KeyEvent.VK_P && !_over) {
-				_paused = !_paused;
-				_shell.pause(_paused);
+				_loop.post(GameLoop.SWAP);
+			} else if(e.getKeyCode()==KeyEvent.VK_P) {
+				_loop.post(GameLoop.TOGGLE_PAUSE);
 			}
 		}
 		
@@ -26,7 +26,6 @@ import javax.swing.*;
 public class TetrisShell extends JPanel {
 	
 	private UpcomingPieces _upcoming;
-	private int _lines;
 	
 	private NextPiece _next;
 	private StoredPiece _stored;
@@ -44,7 +43,6 @@ public class TetrisShell extends JPanel {
 		
 		// Sets up the proxy for the upcoming pieces
 		_upcoming = new UpcomingPieces();
-		_lines = 0;
 		
 		// Almost entirely ui with some listeners here and there
 		this.setLayout(new GridBagLayout());
@@ -140,16 +138,8 @@ public class TetrisShell extends JPanel {
 		quit.setPreferredSize(new Dimension(120,30));
 		quit.addActionListener(new QuitListener());
 		this.add(quit,c);
-	}
-	
-	// Accessors. Important when the stored piece is empty
-	public boolean isEmpty() {
-		return _stored.isEmpty();
-	}
-	
-	// Called to peek at the stored piece (AI)
-	public int peekSwap() {
-		return _stored.peek();
+		
+		_tetris.start();
 	}
 	
 	// Mutator. Important for passing pause and stored piece information
@@ -163,28 +153,25 @@ public class TetrisShell extends JPanel {
 		_loss = new LossFrame();
 	}
 	
-	// Called by the tetris game whenever a piece locks to update the ui
-	public void updateScore(int lines) {
+	// Called by the tetris game whenever a piece locks to update the ui, with the lines
+	// cleared so far and the upcoming pieces
+	public void updateScore(int lines, int[] upcoming) {
 		// Update the scoreboard
-		_lines += lines;
-		_score.setText(Integer.toString(_lines));
-		// Update the Rate
-		_tetris.dropRate(12000/(lines+15));
+		_score.setText(Integer.toString(lines));
 		// Update the upcoming pieces
-		_next.paintNext(Constants.TETROMINOES[_upcoming.peek(1)]);
-		_sub1.paintNext();
-		_sub2.paintNext();
-		_sub3.paintNext();
-	}
-	
-	public void clearScore() {
-		_lines = 0;
-		this.updateScore(0);
+		_next.paintNext(Constants.TETROMINOES[upcoming[0]]);
+		_sub1.paintNext(upcoming[1]);
+		_sub2.paintNext(upcoming[2]);
+		_sub3.paintNext(upcoming[3]);
 	}
 	
-	// Passes information between tetris and its shell
-	public int swapPiece(int type) {
-		return _stored.swapPiece(type);
+	// Called by the tetris game whenever the stored piece changes (-1 = empty)
+	public void showStored(int type) {
+		if(type==-1) {
+			_stored.clearPiece();
+		} else {
+			_stored.swapPiece(type);
+		}
 	}
 	
 	// Passes pause information between tetris and its shell. Pause is called
@@ -251,18 +238,15 @@ public class TetrisShell extends JPanel {
 	// panel. They only display the color of the upcoming pieces, but show farther
 	// ahead.
 	private class SubPiece extends JPanel {
-		private int _i;
-		
 		public SubPiece(int i) {
 			super();
 			this.setPreferredSize(new Dimension(36,36));
-			_i = i+1;
-			this.paintNext();
+			this.paintNext(_upcoming.peek(i+1));
 		}
 		
 		// Called whenever a tetromino locks to push the paint forward
-		public void paintNext() {
-			int x[][] = Constants.TETROMINOES[_upcoming.peek(_i)];
+		public void paintNext(int typeInt) {
+			int x[][] = Constants.TETROMINOES[typeInt];
 			this.setBackground(new Color(x[2][0],x[2][1],x[2][2]));
 		}
 	}
@@ -297,16 +281,6 @@ public class TetrisShell extends JPanel {
 			_y[3] = 0;
 		}
 		
-		// Important when null
-		public boolean isEmpty() {
-			return _tetrominoType == -1;
-		}
-		
-		// Used by AI
-		public int peek() {
-			return _tetrominoType;
-		}
-		
 		// Called by the Tetris object, then passed through the shell
 		public int swapPiece(int type) {
 			int temp = _tetrominoType;
@@ -360,6 +334,7 @@ public class TetrisShell extends JPanel {
 	private class QuitListener implements ActionListener {
 		@Override
 		public void actionPerformed(ActionEvent e) {
+			_tetris.stop();
 			System.exit(0);
 		}
 	}
@@ -369,7 +344,6 @@ public class TetrisShell extends JPanel {
 		@Override
 		public void actionPerformed(ActionEvent e) {
 			_tetris.restart();
-			_stored.clearPiece();
 			if(_loss != null) {
 				_loss.setVisible(false);
 				_loss.dispose();
@@ -0,0 +1,303 @@
+package tetris;
+
+/**
+ * Offline tuner for the weights of the FeatureEvaluator. Evolves a population of weight
+ * vectors with a genetic algorithm: every generation each vector plays the same seeded
+ * headless games (so luck of the deal doesn't pick the winner), the best few carry over
+ * unchanged, and the rest of the next generation is bred from tournament winners by
+ * uniform crossover and mutation. Each vector plays its games on one worker of a
+ * work-stealing pool, with one AI per worker thread as in the GameFarm, so the AI's score
+ * cache is only cleared when the worker moves on to another vector.
+ * 
+ * On an ordinary game almost any sensible weights play until the piece cap, clearing
+ * about the same number of lines, so lines cleared can't tell them apart. Instead a row
+ * of garbage with one hole is pushed in under the stack every RISE pieces, faster than the
+ * AI can comfortably dig, and fitness is the number of pieces played before topping out.
+ * Games are still capped at max pieces in case some weights keep up. The holes come from
+ * each game's seed, so every vector digs through the same garbage.
+ * 
+ * After every generation the population is checkpointed, and the best weights so far are
+ * written in the format FeatureEvaluator.load reads, so they can be played with
+ * -Dtetris.ai.weights. Running again with the same checkpoint file carries on where the
+ * last run stopped. Every random choice comes from the seed and the generation number, so
+ * a resumed run evolves exactly as an uninterrupted one would.
+ * 
+ * Usage: java tetris.Tuner [generations] [population] [games per vector] [max pieces per game]
+ *        [threads] [checkpoint file] [weights file] [seed]
+ * 
+ * @author dmayans
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class Tuner {
+	
+	private static final int ELITE = 2; // Vectors carried over unchanged
+	private static final int TOURNAMENT = 3; // Vectors drawn to pick each parent
+	private static final double MUTATION = 0.3; // Chance of mutating each weight
+	private static final int RISE = 4; // Pieces between rows of garbage
+	
+	private ForkJoinPool _pool;
+	private WorkerAI _ai;
+	private int _threads;
+	private int _games;
+	private int _max;
+	private long _seed;
+	
+	private int _generation;
+	private int[][] _population;
+	private int[] _best;
+	private long _bestFitness;
+	
+	public Tuner(int threads, int games, int max, long seed) {
+		_pool = new ForkJoinPool(threads);
+		_ai = new WorkerAI();
+		_threads = threads;
+		_games = games;
+		_max = max;
+		_seed = seed;
+		_bestFitness = -1;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		int generations = args.length>0 ? Integer.parseInt(args[0]) : 50;
+		int population = args.length>1 ? Integer.parseInt(args[1]) : 32;
+		int games = args.length>2 ? Integer.parseInt(args[2]) : 8;
+		int max = args.length>3 ? Integer.parseInt(args[3]) : 500;
+		int threads = args.length>4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		String checkpoint = args.length>5 ? args[5] : "tuner.checkpoint";
+		String weights = args.length>6 ? args[6] : "weights.properties";
+		long seed = args.length>7 ? Long.parseLong(args[7]) : 0;
+		
+		Tuner tuner = new Tuner(threads, games, max, seed);
+		if(new File(checkpoint).exists()) {
+			tuner.resume(checkpoint);
+			System.out.println("resumed at generation " + tuner._generation + " from " + checkpoint);
+		} else {
+			tuner.start(population);
+		}
+		while(tuner._generation<generations) {
+			tuner.step();
+			tuner.save(checkpoint);
+			new FeatureEvaluator(tuner._best, Constants.SCORES).save(weights);
+		}
+		tuner._pool.shutdown();
+		System.out.println("best weights written to " + weights);
+	}
+	
+	// The first generation: the default weights and mutations of them
+	public void start(int size) {
+		SplittableRandom random = this.random(0);
+		_population = new int[size][];
+		_population[0] = FeatureEvaluator.DEFAULTS.clone();
+		for(int i=1; i<size; i++) {
+			_population[i] = this.mutate(FeatureEvaluator.DEFAULTS.clone(), random);
+		}
+		_generation = 0;
+	}
+	
+	// Plays one generation and breeds the next
+	public void step() {
+		long[] fitness = this.evaluate();
+		Integer[] order = new Integer[_population.length];
+		for(int i=0; i<order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new ByFitness(fitness));
+		if(fitness[order[0]]>_bestFitness) {
+			_bestFitness = fitness[order[0]];
+			_best = _population[order[0]].clone();
+		}
+		System.out.printf("generation %d: best %.1f pieces/game %s, median %.1f, all-time best %.1f%n", _generation,
+				(double) fitness[order[0]]/_games, Arrays.toString(_population[order[0]]),
+				(double) fitness[order[order.length/2]]/_games, (double) _bestFitness/_games);
+		
+		SplittableRandom random = this.random(_generation+1);
+		int[][] next = new int[_population.length][];
+		for(int i=0; i<Math.min(ELITE, next.length); i++) {
+			next[i] = _population[order[i]];
+		}
+		for(int i=ELITE; i<next.length; i++) {
+			int[] a = _population[this.tournament(fitness, random)];
+			int[] b = _population[this.tournament(fitness, random)];
+			int[] child = new int[a.length];
+			for(int j=0; j<child.length; j++) {
+				child[j] = random.nextBoolean() ? a[j] : b[j];
+			}
+			next[i] = this.mutate(child, random);
+		}
+		_population = next;
+		_generation++;
+	}
+	
+	// Plays every vector through the generation's games. Returns the pieces each played.
+	private long[] evaluate() {
+		SplittableRandom deal = this.random(-_generation-1);
+		long[] seeds = new long[_games];
+		for(int g=0; g<_games; g++) {
+			seeds[g] = deal.nextLong();
+		}
+		AtomicLongArray pieces = new AtomicLongArray(_population.length);
+		long start = System.nanoTime();
+		for(int i=0; i<_population.length; i++) {
+			_pool.execute(new Job(new FeatureEvaluator(_population[i], Constants.SCORES), seeds, i, pieces));
+		}
+		while(!_pool.awaitQuiescence(1, TimeUnit.DAYS)) {}
+		double seconds = (System.nanoTime()-start)/1e9;
+		int played = _population.length*_games;
+		System.out.printf("%d games in %.1fs: %.2f games/s per core on %d threads%n", played, seconds,
+				played/seconds/_threads, _threads);
+		long[] fitness = new long[_population.length];
+		for(int i=0; i<fitness.length; i++) {
+			fitness[i] = pieces.get(i);
+		}
+		return fitness;
+	}
+	
+	// Index of the fittest of a few vectors drawn at random
+	private int tournament(long[] fitness, SplittableRandom random) {
+		int best = random.nextInt(fitness.length);
+		for(int i=1; i<TOURNAMENT; i++) {
+			int other = random.nextInt(fitness.length);
+			if(fitness[other]>fitness[best]) {best = other;}
+		}
+		return best;
+	}
+	
+	// Nudges some of the weights by about a quarter of their size (at least 1)
+	private int[] mutate(int[] weights, SplittableRandom random) {
+		for(int i=0; i<weights.length; i++) {
+			if(random.nextDouble()<MUTATION) {
+				int step = Math.max(1, Math.abs(weights[i])/4);
+				weights[i] += random.nextInt(-step, step+1);
+			}
+		}
+		return weights;
+	}
+	
+	// Random choices for a generation depend only on the seed and the generation
+	private SplittableRandom random(long generation) {
+		return new SplittableRandom(_seed*0x9E3779B97F4A7C15L + generation);
+	}
+	
+	// Writes the state of the run to path, replacing the old checkpoint in one step so a
+	// crash mid-write never leaves a broken one behind
+	public void save(String path) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("generation", Integer.toString(_generation));
+		properties.setProperty("seed", Long.toString(_seed));
+		properties.setProperty("best", join(_best));
+		properties.setProperty("bestFitness", Long.toString(_bestFitness));
+		properties.setProperty("population", Integer.toString(_population.length));
+		for(int i=0; i<_population.length; i++) {
+			properties.setProperty("vector." + i, join(_population[i]));
+		}
+		File file = new File(path);
+		File temp = new File(path + ".tmp");
+		try(OutputStream out = new FileOutputStream(temp)) {
+			properties.store(out, "tetris.Tuner checkpoint");
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	// Picks up a run from the checkpoint at path. The seed comes from the checkpoint.
+	public void resume(String path) throws IOException {
+		Properties properties = new Properties();
+		try(InputStream in = new FileInputStream(path)) {
+			properties.load(in);
+		}
+		_generation = Integer.parseInt(properties.getProperty("generation"));
+		_seed = Long.parseLong(properties.getProperty("seed"));
+		_best = split(properties.getProperty("best"));
+		_bestFitness = Long.parseLong(properties.getProperty("bestFitness"));
+		_population = new int[Integer.parseInt(properties.getProperty("population"))][];
+		for(int i=0; i<_population.length; i++) {
+			_population[i] = split(properties.getProperty("vector." + i));
+		}
+	}
+	
+	private static String join(int[] weights) {
+		StringBuilder builder = new StringBuilder();
+		for(int i=0; i<weights.length; i++) {
+			if(i>0) {builder.append(',');}
+			builder.append(weights[i]);
+		}
+		return builder.toString();
+	}
+	
+	private static int[] split(String weights) {
+		String[] parts = weights.split(",");
+		int[] result = new int[parts.length];
+		for(int i=0; i<parts.length; i++) {
+			result[i] = Integer.parseInt(parts[i].trim());
+		}
+		return result;
+	}
+	
+	// Every game for one weight vector, played by whichever worker picks it up
+	private class Job implements Runnable {
+		private FeatureEvaluator _evaluator;
+		private long[] _seeds;
+		private int _vector;
+		private AtomicLongArray _pieces;
+		
+		public Job(FeatureEvaluator evaluator, long[] seeds, int vector, AtomicLongArray pieces) {
+			_evaluator = evaluator;
+			_seeds = seeds;
+			_vector = vector;
+			_pieces = pieces;
+		}
+		
+		@Override
+		public void run() {
+			AI ai = _ai.get();
+			ai.setEvaluator(_evaluator); // Clears the score cache, so once for all the games
+			for(long seed : _seeds) {
+				Game game = new Game(ai, new UpcomingPieces(seed));
+				SplittableRandom holes = new SplittableRandom(seed);
+				while(game.getPieces()<_max && game.step()) {
+					if(game.getPieces()%RISE==0) {game.rise(Board.FULL & ~(1<<holes.nextInt(Board.WIDTH)));}
+				}
+				_pieces.addAndGet(_vector, game.getPieces());
+			}
+		}
+	}
+	
+	// Sorts vector indices from the most pieces played to the fewest
+	private static class ByFitness implements Comparator<Integer> {
+		private long[] _fitness;
+		
+		public ByFitness(long[] fitness) {
+			_fitness = fitness;
+		}
+		
+		@Override
+		public int compare(Integer a, Integer b) {
+			return Long.compare(_fitness[b], _fitness[a]);
+		}
+	}
+	
+	// Gives each worker thread an AI of its own
+	private static class WorkerAI extends ThreadLocal<AI> {
+		@Override
+		protected AI initialValue() {
+			AI ai = new AI();
+			ai.setThreads(1); // The tuner already keeps every core busy
+			return ai;
+		}
+	}
+}
@@ -6,18 +6,59 @@ package tetris;
  * This guarantees a level of consistency and a maximum of 12 tetrominoes in between
  * I blocks.
  * 
+ * Every game is dealt from a seed of its own, so a game can be dealt again piece for
+ * piece from its seed. Seeds for new games are drawn from a SplittableRandom source that
+ * belongs to this instance (or is split off for it), so parallel games never share or
+ * contend on generator state.
+ * 
  * @author dmayans
  */
 
+import java.util.SplittableRandom;
+
 public class UpcomingPieces {
 	
+	public static final int PREVIEW = 4; // Pieces after the current one shown by the shell
+	
 	private int[] _pieces; // Current set of seven pieces
 	private int[] _next; // Next set of seven pieces.
 	private int _counter;
+	private SplittableRandom _source; // Seeds for new games
+	private SplittableRandom _random; // Shuffles the current game
+	private long _seed;
 	
 	public UpcomingPieces() {
+		this(new SplittableRandom());
+	}
+	
+	// Deals the first game from the given seed
+	public UpcomingPieces(long seed) {
+		this(new SplittableRandom(seed), seed);
+	}
+	
+	// Draws the seed of every game from source. Callers running games in parallel should
+	// hand each one source.split().
+	public UpcomingPieces(SplittableRandom source) {
+		this(source, source.nextLong());
+	}
+	
+	private UpcomingPieces(SplittableRandom source, long seed) {
+		_source = source;
 		_pieces = new int[Constants.TETROMINOES.length];
 		_next = new int[Constants.TETROMINOES.length];
+		this.deal(seed);
+	}
+	
+	// Accessor
+	public long getSeed() {
+		// Seed the current game was dealt from
+		return _seed;
+	}
+	
+	// Starts over with the pieces of the game dealt from seed
+	public void deal(long seed) {
+		_seed = seed;
+		_random = new SplittableRandom(seed);
 		// Sets up initial tetrominoes
 		for(int i=0; i<Constants.TETROMINOES.length; i++) {
 			_pieces[i] = i;
@@ -25,6 +66,7 @@ public class UpcomingPieces {
 		}
 		this.shuffle(_pieces);
 		this.shuffle(_next);
+		_counter = 0;
 		this.push();
 	}
 	
@@ -45,19 +87,32 @@ public class UpcomingPieces {
 	private void shuffle(int[] x) {
 		// Simple Fisher-Yates shuffle
 		for(int i=0; i<x.length; i++) {
-			int rand = (int) (Math.random()*(x.length-i)) + i;
+			int rand = _random.nextInt(x.length-i) + i;
 			int temp = x[i];
 			x[i] = x[rand];
 			x[rand] = temp;
 		}
 	}
 	
+	// Called on restart to deal a new game
 	public void shuffle() {
-		this.shuffle(_next);
-		this.shuffle(_pieces);
-		_counter = 0;
+		this.deal(_source.nextLong());
 	}
-
+	
+	// Position of the current piece within its bag of seven
+	public int position() {
+		return _counter;
+	}
+	
+	// Pieces dealt from the current bag so far, including the current piece, one bit per type
+	public int dealt() {
+		int dealt = 0;
+		for(int i=0; i<=_counter; i++) {
+			dealt |= 1<<_pieces[i];
+		}
+		return dealt;
+	}
+	
 	// Used by the shell to peek and display upcoming pieces
 	// (this is why an array is being used instead of a queue)
 	public int peek(int index) {
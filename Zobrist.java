@@ -0,0 +1,84 @@
+package tetris;
+
+/**
+ * Zobrist keys for hashing positions. A position's hash is the XOR of one random key per
+ * occupied cell, so locking a piece only needs four XORs. Placements (shadows), the
+ * stored piece and the position in the 7-bag each get their own keys so they can be
+ * mixed into the same hash. The keys come from a fixed seed, so hashes are the same from
+ * run to run.
+ * 
+ * @author dmayans
+ */
+
+import java.util.SplittableRandom;
+
+public class Zobrist {
+	
+	private static final long[] CELLS = new long[Board.HEIGHT*Board.WIDTH];
+	private static final long[] SHADOWS = new long[Board.HEIGHT*Board.WIDTH];
+	private static final long[] STORED = new long[Constants.TETROMINOES.length+1]; // +1 for empty
+	private static final long[] BAG = new long[Constants.TETROMINOES.length];
+	
+	static {
+		SplittableRandom random = new SplittableRandom(0x7E7215L);
+		for(int i=0; i<CELLS.length; i++) {
+			CELLS[i] = random.nextLong();
+			SHADOWS[i] = random.nextLong();
+		}
+		for(int i=0; i<STORED.length; i++) {
+			STORED[i] = random.nextLong();
+		}
+		for(int i=0; i<BAG.length; i++) {
+			BAG[i] = random.nextLong();
+		}
+	}
+	
+	// Hash of the occupied cells in the given rows
+	public static long cells(int[] rows) {
+		return cells(rows, 0);
+	}
+	
+	// Hash of the occupied cells in the given rows from row from up
+	public static long cells(int[] rows, int from) {
+		long hash = 0;
+		for(int y=from; y<rows.length; y++) {
+			for(int row=rows[y]; row!=0; row &= row-1) {
+				hash ^= CELLS[y*Board.WIDTH + Integer.numberOfTrailingZeros(row)];
+			}
+		}
+		return hash;
+	}
+	
+	// Hash of the cells of a placement, as locked blocks
+	public static long lock(Placement p) {
+		return lock(p, Board.HEIGHT);
+	}
+	
+	// Hash of the cells of a placement below row below, as locked blocks
+	public static long lock(Placement p, int below) {
+		long hash = 0;
+		for(int i=0; i<4; i++) {
+			if(p.getY(i)<below) {hash ^= CELLS[p.getY(i)*Board.WIDTH + p.getX(i)];}
+		}
+		return hash;
+	}
+	
+	// Hash of the cells of a placement, as a shadow that hasn't locked yet
+	public static long shadow(Placement p) {
+		long hash = 0;
+		for(int i=0; i<4; i++) {
+			hash ^= SHADOWS[p.getY(i)*Board.WIDTH + p.getX(i)];
+		}
+		return hash;
+	}
+	
+	// Key for the stored piece, -1 = empty
+	public static long stored(int type) {
+		return STORED[type+1];
+	}
+	
+	// Key for the position of the current piece within its bag
+	public static long bag(int position) {
+		return BAG[position%BAG.length];
+	}
+}
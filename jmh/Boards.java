@@ -0,0 +1,77 @@
+package tetris;
+
+/**
+ * The boards every JMH benchmark runs on, one per value of the board parameter: empty,
+ * mid-game (the board after the AI has played 60 pieces of a seeded game) and near top-out
+ * (sixteen rows of garbage, each with a single hole). The boards are built once per trial
+ * and shared by every thread, so benchmarks that change a board work on a copy of their
+ * own from live().
+ * 
+ * @author dmayans
+ */
+
+import java.awt.Color;
+import java.util.SplittableRandom;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+public class Boards {
+	
+	@Param({"empty", "mid-game", "near-top-out"})
+	public String board; // Named without the underscore, since JMH prints it and -p sets it
+	
+	private BoardState _state;
+	
+	@Setup
+	public void setUp() {
+		if(board.equals("empty")) {
+			_state = new BoardState(new int[Board.HEIGHT]);
+		} else if(board.equals("mid-game")) {
+			Game game = new Game(new AI(), new UpcomingPieces(1));
+			game.play(60);
+			_state = game.getState().getBoard();
+		} else {
+			SplittableRandom random = new SplittableRandom(2);
+			int[] rows = new int[Board.HEIGHT];
+			for(int y=0; y<16; y++) {
+				rows[y] = Board.FULL & ~(1<<random.nextInt(Board.WIDTH));
+			}
+			_state = new BoardState(rows);
+		}
+	}
+	
+	// Accessor
+	public BoardState getState() {
+		return _state;
+	}
+	
+	// Copies the board onto a live board
+	public Board live() {
+		Board board = new Board();
+		for(int y=0; y<Board.HEIGHT; y++) {
+			for(int x=0; x<Board.WIDTH; x++) {
+				if(_state.isOccupied(x, y)) {
+					board.paintBlock(x, y, Color.RED);
+					board.lock(x, y);
+				}
+			}
+		}
+		return board;
+	}
+	
+	// Every landing spot of a piece of the given type, each in a placement of its own
+	public Placement[] placements(int type) {
+		MoveGenerator moves = new MoveGenerator();
+		Placement[] placements = new Placement[moves.generate(_state, type)];
+		for(int c=0; c<placements.length; c++) {
+			Ghost ghost = new Ghost();
+			ghost.place(type, moves.get(c));
+			placements[c] = ghost.getPlacement();
+		}
+		return placements;
+	}
+}
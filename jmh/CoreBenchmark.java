@@ -0,0 +1,167 @@
+package tetris;
+
+/**
+ * JMH microbenchmarks for the hot paths of the game and the AI: Board.isOccupied,
+ * Board.clearRow, BoardState.getScore, FeatureEvaluator.score, Tetromino.move (rotation
+ * and the wall kick path), Shadow construction, GameState.apply and AI.newMove, each on
+ * every board in Boards. Run them with the gc profiler and quote both the time and the
+ * gc.alloc.rate.norm (bytes per operation) when changing any of these classes.
+ * 
+ * Usage: java -jar target/benchmarks.jar CoreBenchmark -prof gc
+ * 
+ * @author dmayans
+ */
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CoreBenchmark {
+	
+	@Benchmark
+	public void isOccupied(Live live, Blackhole hole) {
+		// All 220 cells
+		for(int y=0; y<Board.HEIGHT; y++) {
+			for(int x=0; x<Board.WIDTH; x++) {
+				hole.consume(live._board.isOccupied(x, y));
+			}
+		}
+	}
+	
+	@Benchmark
+	public void clearRow(Live live, Blackhole hole) {
+		// Fills four rows, then clears them again
+		for(int y=live._min; y<live._min+4; y++) {
+			for(int x=0; x<Board.WIDTH; x++) {
+				live._board.paintBlock(x, y, Color.RED);
+			}
+		}
+		hole.consume(live._board.clearRow(live._min));
+	}
+	
+	@Benchmark
+	public void getScore(Candidates candidates, Blackhole hole) {
+		hole.consume(candidates._classic.score(candidates._state, candidates.next()));
+	}
+	
+	@Benchmark
+	public void featureScore(Candidates candidates, Blackhole hole) {
+		hole.consume(candidates._features.score(candidates._state, candidates.next()));
+	}
+	
+	@Benchmark
+	public void rotate(Falling falling, Blackhole hole) {
+		hole.consume(falling._t.move(Constants.ROTATE));
+	}
+	
+	@Benchmark
+	public void rotateWall(Falling falling, Blackhole hole) {
+		// A vertical I flush against the left wall, so rotating has to kick
+		hole.consume(falling._i.move(Constants.ROTATE));
+		while(falling._i.move(Constants.LEFT)) {}
+	}
+	
+	@Benchmark
+	public void newShadow(Live live, Blackhole hole) {
+		hole.consume(new Shadow(live._x, live._y, live._board));
+	}
+	
+	@Benchmark
+	public void apply(Candidates candidates, Blackhole hole) {
+		hole.consume(candidates._game.apply(candidates.next()));
+	}
+	
+	@Benchmark
+	public void newMove(Decisions decisions, Blackhole hole) {
+		decisions._ai.newMove(decisions._game);
+		hole.consume(decisions._ai.getPosition());
+	}
+	
+	// A live copy of the board, for the cases that write to it
+	@State(Scope.Thread)
+	public static class Live {
+		private Board _board;
+		private int _min; // First row above the stack, where clearRow fills four rows and clears them
+		private int[] _x = {3, 4, 5, 4}; // A T in the spawn rows, for the shadow
+		private int[] _y = {20, 20, 20, 21};
+		
+		@Setup
+		public void setUp(Boards boards) {
+			_board = boards.live();
+			// Above every block, so clearing the four rows leaves the board as it was
+			_min = Board.HEIGHT;
+			while(_min>0 && _board.getRow(_min-1)==0) {_min--;}
+			if(_min>Board.VISIBLE-4) {throw new IllegalStateException("No room for four rows above the "+boards.board+" board");}
+		}
+	}
+	
+	// Every landing spot of a T, scored or applied in turn
+	@State(Scope.Thread)
+	public static class Candidates {
+		private BoardState _state;
+		private GameState _game;
+		private Placement[] _placements;
+		private int _next;
+		private Evaluator _classic = new ClassicEvaluator();
+		private Evaluator _features = new FeatureEvaluator();
+		
+		@Setup
+		public void setUp(Boards boards) {
+			_state = boards.getState();
+			_game = new GameState(_state, 6, 0, new int[] {2, 3, 4, 5}, 4);
+			_placements = boards.placements(6);
+		}
+		
+		public Placement next() {
+			_next = (_next+1)%_placements.length;
+			return _placements[_next];
+		}
+	}
+	
+	// A T just below the spawn rows and an I flush against the left wall
+	@State(Scope.Thread)
+	public static class Falling {
+		private Tetromino _t;
+		private Tetromino _i;
+		
+		@Setup
+		public void setUp(Boards boards) {
+			_t = new Tetromino(boards.live(), 6);
+			_t.move(Constants.DOWN);
+			_i = new Tetromino(boards.live(), 0);
+			_i.move(Constants.DOWN);
+			_i.move(Constants.ROTATE);
+			while(_i.move(Constants.LEFT)) {}
+		}
+	}
+	
+	// A serial AI deciding for a T with an I in store and four pieces of preview
+	@State(Scope.Thread)
+	public static class Decisions {
+		private AI _ai;
+		private GameState _game;
+		
+		@Setup
+		public void setUp(Boards boards) {
+			_ai = new AI();
+			_ai.setThreads(1);
+			_game = new GameState(boards.getState(), 6, 0, new int[] {2, 3, 4, 5}, 4);
+		}
+	}
+}
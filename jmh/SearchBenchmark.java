@@ -0,0 +1,74 @@
+package tetris;
+
+/**
+ * JMH comparison of the ways a serial AI can score its candidates when it only looks at
+ * the current and stored pieces: one at a time, with branch and bound cutting off
+ * candidates that can't beat the best so far, and in a single Batch. Every mode picks the
+ * same moves (AIBenchmark checks that), so this only compares how long a decision takes.
+ * Each operation decides for all seven pieces in turn, with a T in store, on one of the
+ * Boards. The cache is off, so every candidate is scored every time.
+ * 
+ * Usage: java -jar target/benchmarks.jar SearchBenchmark -prof gc
+ * 
+ * @author dmayans
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SearchBenchmark {
+	
+	private static final int PIECES = 7; // Constants.TETROMINOES.length, which annotations can't use
+	
+	@Param({"classic", "features"})
+	public String evaluator;
+	
+	@Param({"single", "cutoff", "batch"})
+	public String scoring;
+	
+	private AI _ai;
+	private GameState[] _games;
+	
+	@Setup
+	public void setUp(Boards boards) {
+		_ai = new AI();
+		_ai.setThreads(1);
+		_ai.setLookahead(1, 1, 0);
+		_ai.setCache(0);
+		_ai.setCutoff(scoring.equals("cutoff"));
+		_ai.setBatch(scoring.equals("batch"));
+		_ai.setEvaluator(evaluator.equals("classic") ? new ClassicEvaluator() : new FeatureEvaluator());
+		_games = new GameState[PIECES];
+		for(int type=0; type<PIECES; type++) {
+			_games[type] = new GameState(boards.getState(), type, 6);
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(PIECES)
+	public void decide(Blackhole hole) {
+		for(int type=0; type<PIECES; type++) {
+			_ai.newMove(_games[type]);
+			hole.consume(_ai.getPosition());
+		}
+	}
+}
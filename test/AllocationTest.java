@@ -0,0 +1,76 @@
+package tetris;
+
+/**
+ * Checks that the AI's decisions allocate nothing once warmed up. Each case runs many
+ * decisions so the JIT has compiled the search, then reads the thread's allocation counter
+ * before and after another batch of them. Any byte allocated by the search shows up here
+ * long before it shows up as GC pressure in a game.
+ * 
+ * @author dmayans
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+public class AllocationTest {
+	
+	private static final int WARMUP = 20000;
+	private static final int DECISIONS = 2000;
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	
+	@Test
+	public void newMoveOnGameState() {
+		// Positions from a seeded game, with the full preview
+		ArrayList<GameState> games = new ArrayList<GameState>();
+		Game game = new Game(new AI(), new UpcomingPieces(1));
+		for(int i=0; i<40 && game.step(); i++) {
+			games.add(game.getState());
+		}
+		AI ai = new AI();
+		ai.setThreads(1);
+		for(int i=0; i<WARMUP; i++) {
+			ai.newMove(games.get(i%games.size()));
+		}
+		long before = allocated();
+		for(int i=0; i<DECISIONS; i++) {
+			ai.newMove(games.get(i%games.size()));
+		}
+		assertEquals(0, allocated()-before, "bytes allocated by "+DECISIONS+" decisions");
+	}
+	
+	@Test
+	public void newMoveOnLiveBoard() {
+		// A mid-game board, asked about again and again without changing
+		Board board = new Board();
+		UpcomingPieces upcoming = new UpcomingPieces(2);
+		for(int y=0; y<8; y++) {
+			for(int x=0; x<Board.WIDTH; x++) {
+				if(x!=y) {
+					board.paintBlock(x, y, Color.RED);
+					board.lock(x, y);
+				}
+			}
+		}
+		Tetromino t = new Tetromino(board, upcoming.push());
+		AI ai = new AI(board, upcoming);
+		ai.setThreads(1);
+		for(int i=0; i<WARMUP; i++) {
+			ai.newMove(t, -1);
+		}
+		long before = allocated();
+		for(int i=0; i<DECISIONS; i++) {
+			ai.newMove(t, -1);
+		}
+		assertEquals(0, allocated()-before, "bytes allocated by "+DECISIONS+" decisions");
+	}
+	
+	private static long allocated() {
+		return THREADS.getCurrentThreadAllocatedBytes();
+	}
+}
@@ -0,0 +1,77 @@
+package tetris;
+
+/**
+ * Checks that scoring a whole Batch gives exactly the scores that scoring each candidate
+ * on its own does. Every piece is placed every way it fits on boards from a seeded game
+ * and on stacks of garbage, so candidates that clear rows, leave holes and tuck under
+ * overhangs are all in there, and each evaluator scores them both ways.
+ * 
+ * @author dmayans
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+public class BatchTest {
+	
+	@Test
+	public void classicMatchesScalar() {
+		this.check(new ClassicEvaluator());
+	}
+	
+	@Test
+	public void featuresMatchScalar() {
+		this.check(new FeatureEvaluator());
+	}
+	
+	@Test
+	public void negativeFeaturesMatchScalar() {
+		// Weights that can lower the score partway down the board, so nothing is cut short
+		int[] weights = {-3, 7, -1, 2, -5, 4, 6};
+		this.check(new FeatureEvaluator(weights, Constants.SCORES));
+	}
+	
+	private void check(Evaluator evaluator) {
+		MoveGenerator moves = new MoveGenerator();
+		Ghost ghost = new Ghost();
+		Batch batch = new Batch();
+		int[] scores = new int[0];
+		for(BoardState state : boards()) {
+			for(int type=0; type<Constants.TETROMINOES.length; type++) {
+				int count = moves.generate(state, type);
+				batch.clear();
+				for(int c=0; c<count; c++) {
+					ghost.place(type, moves.get(c));
+					batch.add(ghost.getPlacement());
+				}
+				if(scores.length<count) {scores = new int[count];}
+				evaluator.score(state, batch, scores);
+				for(int i=0; i<count; i++) {
+					assertEquals(evaluator.score(state, batch.get(i)), scores[i], "candidate "+i+" of piece "+type);
+				}
+			}
+		}
+	}
+	
+	// Boards along a seeded game, then stacks of garbage rows with one hole each
+	private static ArrayList<BoardState> boards() {
+		ArrayList<BoardState> boards = new ArrayList<BoardState>();
+		Game game = new Game(new AI(), new UpcomingPieces(1));
+		for(int i=0; i<200 && game.step(); i++) {
+			if(i%10==0) {boards.add(game.getState().getBoard());}
+		}
+		SplittableRandom random = new SplittableRandom(3);
+		for(int garbage=2; garbage<=18; garbage+=4) {
+			int[] rows = new int[Board.HEIGHT];
+			for(int y=0; y<garbage; y++) {
+				rows[y] = Board.FULL & ~(1<<random.nextInt(Board.WIDTH));
+			}
+			boards.add(new BoardState(rows));
+		}
+		return boards;
+	}
+}
@@ -0,0 +1,77 @@
+package tetris;
+
+/**
+ * Checks that BoardState.apply keeps its incremental columns, hash and features exactly
+ * equal to counting them all again from the rows it leaves behind. Every piece is placed
+ * every way it fits on boards from a seeded game and on random stacks with nearly full
+ * rows, so plenty of the placements clear one or more rows.
+ * 
+ * @author dmayans
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+public class BoardStateTest {
+	
+	@Test
+	public void applyMatchesRecount() {
+		MoveGenerator moves = new MoveGenerator();
+		Ghost ghost = new Ghost();
+		int clears = 0;
+		for(BoardState state : boards()) {
+			for(int type=0; type<Constants.TETROMINOES.length; type++) {
+				int count = moves.generate(state, type);
+				for(int c=0; c<count; c++) {
+					ghost.place(type, moves.get(c));
+					BoardState after = state.apply(ghost.getPlacement());
+					int[] rows = new int[Board.HEIGHT];
+					for(int y=0; y<Board.HEIGHT; y++) {
+						rows[y] = after.getRow(y);
+					}
+					BoardState recount = new BoardState(rows);
+					String where = "piece "+type+" at "+moves.get(c);
+					assertEquals(recount.getHash(), after.getHash(), where);
+					for(int x=0; x<Board.WIDTH; x++) {
+						assertEquals(recount.getColumn(x), after.getColumn(x), where);
+						assertEquals(recount.getHeight(x), after.getHeight(x), where);
+					}
+					assertEquals(recount.getTotalHeight(), after.getTotalHeight(), where);
+					assertEquals(recount.getHoles(), after.getHoles(), where);
+					assertEquals(recount.getBumpiness(), after.getBumpiness(), where);
+					assertEquals(recount.getWells(), after.getWells(), where);
+					assertEquals(recount.getRowTransitions(), after.getRowTransitions(), where);
+					assertEquals(recount.getColumnTransitions(), after.getColumnTransitions(), where);
+					if(after.getTotalHeight()!=state.getTotalHeight(ghost.getPlacement())) {clears++;}
+				}
+			}
+		}
+		assertTrue(clears>1000, "only "+clears+" placements cleared rows");
+	}
+	
+	// Boards along a seeded game, then random stacks, a third of their rows one cell short.
+	// Some rows of the stacks are left empty, leaving blocks floating above them.
+	private static ArrayList<BoardState> boards() {
+		ArrayList<BoardState> boards = new ArrayList<BoardState>();
+		Game game = new Game(new AI(), new UpcomingPieces(1));
+		for(int i=0; i<200 && game.step(); i++) {
+			boards.add(game.getState().getBoard());
+		}
+		SplittableRandom random = new SplittableRandom(9);
+		for(int i=0; i<200; i++) {
+			int[] rows = new int[Board.HEIGHT];
+			int stack = random.nextInt(19);
+			for(int y=0; y<stack; y++) {
+				int row = random.nextInt(3)==0 ? Board.FULL : random.nextInt(Board.FULL+1);
+				rows[y] = random.nextInt(5)==0 ? 0 : row & ~(1<<random.nextInt(Board.WIDTH));
+			}
+			boards.add(new BoardState(rows));
+		}
+		return boards;
+	}
+}